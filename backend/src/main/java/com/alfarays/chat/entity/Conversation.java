@@ -1,23 +1,35 @@
 package com.alfarays.chat.entity;
 
+import com.alfarays.shared.TimeOrderedId;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "_conversations")
+@Table(
+        name = "_conversations",
+        indexes = {
+                @Index(name = "idx_conversations_initiator_activity", columnList = "initiator, is_active, last_message_at"),
+                @Index(name = "idx_conversations_participant_activity", columnList = "participant, is_active, last_message_at"),
+                @Index(name = "idx_conversations_initiator_updated", columnList = "initiator, updated_at"),
+                @Index(name = "idx_conversations_participant_updated", columnList = "participant, updated_at")
+        }
+)
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
+@DynamicUpdate
 public class Conversation {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedId
+    @Column(length = 36)
     private String id;
 
     @Column(unique = true, nullable = false, name="conversation_key")
@@ -29,22 +41,134 @@ public class Conversation {
     @Column(nullable = false, name = "participant")
     private String participant;
 
-    @Column(nullable = false)
+    @Column(nullable = false, name = "created_at")
     private LocalDateTime createdAt;
 
+    @Column(name = "last_message_at")
     private LocalDateTime lastMessageAt;
 
-    @Column(nullable = false)
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "last_message_id", length = 36)
+    private String lastMessageId;
+
+    @Column(name = "last_message_preview")
+    private String lastMessagePreview;
+
+    @Column(name = "last_message_sender")
+    private String lastMessageSender;
+
+    @Column(name = "last_message_seq")
+    private Long lastMessageSeq;
+
+    @Column(nullable = false, name = "initiator_unread_count")
+    @Builder.Default
+    private Integer initiatorUnreadCount = 0;
+
+    @Column(nullable = false, name = "participant_unread_count")
+    @Builder.Default
+    private Integer participantUnreadCount = 0;
+
+    // Read watermarks: each side has read everything up to (read_up_to_at, read_up_to_id)
+    @Column(name = "initiator_read_up_to_at")
+    private LocalDateTime initiatorReadUpToAt;
+
+    @Column(name = "initiator_read_up_to_id", length = 36)
+    private String initiatorReadUpToId;
+
+    @Column(name = "initiator_read_up_to_seq")
+    private Long initiatorReadUpToSeq;
+
+    @Column(name = "initiator_read_at")
+    private LocalDateTime initiatorReadAt;
+
+    @Column(name = "participant_read_up_to_at")
+    private LocalDateTime participantReadUpToAt;
+
+    @Column(name = "participant_read_up_to_id", length = 36)
+    private String participantReadUpToId;
+
+    @Column(name = "participant_read_up_to_seq")
+    private Long participantReadUpToSeq;
+
+    @Column(name = "participant_read_at")
+    private LocalDateTime participantReadAt;
+
+    @Column(nullable = false, name = "is_active")
     private Boolean isActive = true;
 
     @OneToMany(mappedBy = "conversation", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
     @ToString.Exclude
     private Set<Message> messages = new HashSet<>();
 
+    public int unreadCountFor(String userId) {
+        if(userId.equals(initiator)) return initiatorUnreadCount == null ? 0 : initiatorUnreadCount;
+        if(userId.equals(participant)) return participantUnreadCount == null ? 0 : participantUnreadCount;
+        return 0;
+    }
+
+    /**
+     * Inbox sort key: the newest message, or the creation time of a conversation that has none recorded.
+     */
+    public LocalDateTime activityAt() {
+        return lastMessageAt != null ? lastMessageAt : createdAt;
+    }
+
+    public String partnerOf(String userId) {
+        return userId.equals(initiator) ? participant : initiator;
+    }
+
+    /**
+     * Read state of {@code message}, derived from its receiver's watermark; the per-row flag is only
+     * set on messages read before watermarks existed.
+     */
+    public boolean isRead(Message message) {
+        if(Boolean.TRUE.equals(message.getIsRead())) return true;
+
+        boolean receiverIsInitiator = !initiator.equals(message.getSenderId());
+        LocalDateTime upToAt = receiverIsInitiator ? initiatorReadUpToAt : participantReadUpToAt;
+        String upToId = receiverIsInitiator ? initiatorReadUpToId : participantReadUpToId;
+        if(upToAt == null || message.getCreatedAt() == null) return false;
+
+        int compared = message.getCreatedAt().compareTo(upToAt);
+        return compared < 0 || compared == 0 && upToId != null && message.getId().compareTo(upToId) <= 0;
+    }
+
+    public Long readUpToSeq(String readerId) {
+        return readerId.equals(initiator) ? initiatorReadUpToSeq : participantReadUpToSeq;
+    }
+
+    public LocalDateTime readAtOf(String readerId) {
+        return readerId.equals(initiator) ? initiatorReadAt : participantReadAt;
+    }
+
+    public LocalDateTime readAt(Message message) {
+        if(message.getReadAt() != null) return message.getReadAt();
+        if(!isRead(message)) return null;
+        return initiator.equals(message.getSenderId()) ? participantReadAt : initiatorReadAt;
+    }
+
+    public LocalDateTime deliveredAt(Message message) {
+        return message.getDeliveredAt() != null ? message.getDeliveredAt() : readAt(message);
+    }
+
     @PrePersist
     public void prePersist() {
         if(createdAt == null) {
             createdAt = LocalDateTime.now();
         }
+        // Inbox keyset pagination sorts on (lastMessageAt, id), so it must never be null
+        if(lastMessageAt == null) {
+            lastMessageAt = createdAt;
+        }
+        if(updatedAt == null) {
+            updatedAt = createdAt;
+        }
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        updatedAt = LocalDateTime.now();
     }
 }
@@ -1,12 +1,23 @@
 package com.alfarays.chat.entity;
 
+import com.alfarays.shared.TimeOrderedId;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "_messages")
+@Table(
+        name = "_messages",
+        indexes = {
+                @Index(name = "idx_messages_conversation_created_id", columnList = "conversation_id, created_at, id"),
+                @Index(name = "idx_messages_conversation_unread", columnList = "conversation_id, is_read, sender_id")
+        },
+        uniqueConstraints = {
+                @UniqueConstraint(name = "uk_messages_conversation_seq", columnNames = {"conversation_id", "seq"}),
+                @UniqueConstraint(name = "uk_messages_sender_client_id", columnNames = {"sender_id", "client_message_id"})
+        }
+)
 @Getter
 @Setter
 @NoArgsConstructor
@@ -15,25 +26,38 @@ import java.time.LocalDateTime;
 public class Message {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
+    @TimeOrderedId
+    @Column(length = 36)
     private String id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "conversation_id", nullable = false)
     private Conversation conversation;
 
-    @Column(nullable = false)
+    // Position within the conversation, allocated by ConversationSequencer; clients sync on it after reconnecting
+    @Column(name = "seq")
+    private Long seq;
+
+    @Column(nullable = false, name = "sender_id")
     private String senderId;
 
+    // Optional id chosen by the sending client; a retried send with the same id is not stored twice
+    @Column(name = "client_message_id", length = 64)
+    private String clientMessageId;
+
     @Column(nullable = false, columnDefinition = "LONGTEXT")
     private String content;
 
-    @Column(nullable = false)
+    @Column(nullable = false, name = "created_at")
     private LocalDateTime createdAt;
 
     private LocalDateTime readAt;
 
-    @Column(nullable = false)
+    // Set in batches when the recipient's client acknowledges receipt; a read message is implicitly delivered
+    @Column(name = "delivered_at")
+    private LocalDateTime deliveredAt;
+
+    @Column(nullable = false, name = "is_read")
     @Builder.Default
     private Boolean isRead = false;
 
@@ -0,0 +1,27 @@
+package com.alfarays.chat.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+/**
+ * Which node a client should hold its STOMP session on. Answered on request before connecting, and pushed to
+ * {@code /user/queue/reconnect} with a {@code delayMs} when the owner of a connected session changes; an empty
+ * {@code url} means the node is only reachable through the shared endpoint.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AffinityHint {
+    public static final String OWNER = "OWNER";
+    public static final String REBALANCE = "REBALANCE";
+    public static final String DRAIN = "DRAIN";
+
+    private String reason;
+    private String node;
+    private String url;
+    private boolean local;
+    private Long delayMs;
+}
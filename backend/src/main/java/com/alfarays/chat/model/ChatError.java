@@ -0,0 +1,21 @@
+package com.alfarays.chat.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+/**
+ * Pushed to {@code /user/queue/errors} when inbound STOMP work was rejected or failed, so the client can tell
+ * the user or resend; {@code clientMessageId} is set when the failed frame was a send.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChatError {
+    private String conversationId;
+    private String clientMessageId;
+    private String message;
+    private String timestamp;
+}
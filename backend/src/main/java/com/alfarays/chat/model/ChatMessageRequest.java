@@ -1,4 +1,12 @@
 package com.alfarays.chat.model;
 
-public record ChatMessageRequest(String conversationId, String content) {
-}
\ No newline at end of file
+import jakarta.validation.constraints.Size;
+
+public record ChatMessageRequest(
+        String conversationId,
+        String content,
+
+        @Size(max = 64, message = "Client message id must be at most 64 characters long.")
+        String clientMessageId
+) {
+}
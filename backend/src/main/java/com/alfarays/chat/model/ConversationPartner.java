@@ -0,0 +1,4 @@
+package com.alfarays.chat.model;
+
+public record ConversationPartner(String conversationId, String partner) {
+}
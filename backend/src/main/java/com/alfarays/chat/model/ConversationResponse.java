@@ -4,6 +4,7 @@ import com.alfarays.user.model.UserResponse;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.*;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Getter
@@ -18,6 +19,8 @@ public class ConversationResponse {
     private String type;
     private MessageResponse lastMessage;
     private Integer unreadCount;
+    private LocalDateTime lastMessageAt;
+    private Boolean active;
     private UserResponse participant;
     private List<MessageResponse> messages;
     private String avatar;
@@ -0,0 +1,29 @@
+package com.alfarays.chat.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * What a client missed in one conversation since the sequence number it last saw: the missing messages in
+ * order, and the current read watermarks of both sides. {@code lastSeq} is what to send as {@code since}
+ * next time; when {@code hasMore} is set the client should ask again straight away.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ConversationSync {
+    private String conversationId;
+    private List<MessageResponse> messages;
+    private long lastSeq;
+    private boolean hasMore;
+    private Long readUpToSeq;
+    private Long partnerReadUpToSeq;
+    private LocalDateTime partnerReadAt;
+    private Integer unreadCount;
+}
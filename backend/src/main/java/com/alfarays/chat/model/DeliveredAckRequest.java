@@ -0,0 +1,13 @@
+package com.alfarays.chat.model;
+
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public record DeliveredAckRequest(
+        String conversationId,
+
+        @Size(max = 500, message = "At most 500 message ids can be acknowledged at once.")
+        List<String> messageIds
+) {
+}
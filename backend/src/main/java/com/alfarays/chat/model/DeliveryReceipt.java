@@ -0,0 +1,6 @@
+package com.alfarays.chat.model;
+
+import java.util.List;
+
+public record DeliveryReceipt(String conversationId, String recipientId, List<String> messageIds, String timestamp) {
+}
@@ -1,7 +1,12 @@
 package com.alfarays.chat.model;
 
+import jakarta.validation.constraints.Size;
+
 public record MessageRequest(
         String conversationId,
-        String message
+        String message,
+
+        @Size(max = 64, message = "Client message id must be at most 64 characters long.")
+        String clientMessageId
 ) {
 }
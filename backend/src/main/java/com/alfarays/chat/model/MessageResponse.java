@@ -12,9 +12,12 @@ import java.time.LocalDateTime;
 public class MessageResponse {
     private String id;
     private String conversationId;
+    private Long seq;
+    private String clientMessageId;
     private String senderId;
     private String content;
     private LocalDateTime createdAt;
+    private LocalDateTime deliveredAt;
     private LocalDateTime readAt;
     private Boolean isRead;
 }
@@ -0,0 +1,14 @@
+package com.alfarays.chat.model;
+
+import java.util.List;
+
+/**
+ * All partner statuses of a user in one {@code /queue/status} frame; {@link StatusNotification} deltas follow.
+ */
+public record PresenceSnapshot(String type, List<PartnerPresence> partners, String timestamp) {
+
+    public static final String TYPE = "SNAPSHOT";
+
+    public record PartnerPresence(String userId, String status, String lastSeen) {
+    }
+}
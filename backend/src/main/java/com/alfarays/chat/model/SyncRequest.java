@@ -0,0 +1,4 @@
+package com.alfarays.chat.model;
+
+public record SyncRequest(String conversationId, Long sinceSeq, Integer limit) {
+}
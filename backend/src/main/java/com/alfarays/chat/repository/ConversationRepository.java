@@ -1,20 +1,31 @@
 package com.alfarays.chat.repository;
 
 import com.alfarays.chat.entity.Conversation;
+import com.alfarays.chat.model.ConversationPartner;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ConversationRepository extends JpaRepository<Conversation, String> {
 
-    @Query("SELECT c FROM Conversation c WHERE (c.initiator = :username OR c.participant = :username) AND c.isActive = true")
-    List<Conversation> findActiveConversationsByUsername(@Param("username") String username, Pageable pageable);
+    @Query("""
+        SELECT new com.alfarays.chat.model.ConversationPartner(
+            c.id,
+            CASE WHEN c.initiator = :userId THEN c.participant ELSE c.initiator END
+        )
+        FROM Conversation c
+        WHERE (c.initiator = :userId OR c.participant = :userId) AND c.isActive = true
+    """)
+    List<ConversationPartner> findActivePartners(@Param("userId") String userId);
 
     @Query("""
         SELECT c FROM Conversation c
@@ -42,4 +53,117 @@ public interface ConversationRepository extends JpaRepository<Conversation, Stri
 
     @Query("SELECT CASE WHEN COUNT(c) > 0 THEN true ELSE false END FROM Conversation c WHERE c.conversationKey = :key")
     Boolean existsByKey(@Param("key") String key);
+
+    // MySQL evaluates SET assignments left to right, so lastMessageAt must stay the last assignment
+    @Modifying
+    @Query("""
+        UPDATE Conversation c SET
+            c.lastMessageId = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt <= :sentAt THEN :messageId ELSE c.lastMessageId END,
+            c.lastMessagePreview = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt <= :sentAt THEN :preview ELSE c.lastMessagePreview END,
+            c.lastMessageSender = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt <= :sentAt THEN :senderId ELSE c.lastMessageSender END,
+            c.lastMessageSeq = CASE WHEN c.lastMessageSeq IS NULL OR c.lastMessageSeq < :seq THEN :seq ELSE c.lastMessageSeq END,
+            c.initiatorUnreadCount = CASE WHEN c.initiator = :senderId THEN c.initiatorUnreadCount ELSE c.initiatorUnreadCount + :increment END,
+            c.participantUnreadCount = CASE WHEN c.participant = :senderId THEN c.participantUnreadCount ELSE c.participantUnreadCount + :increment END,
+            c.updatedAt = :touchedAt,
+            c.lastMessageAt = CASE WHEN c.lastMessageAt IS NULL OR c.lastMessageAt <= :sentAt THEN :sentAt ELSE c.lastMessageAt END
+        WHERE c.id = :conversationId
+    """)
+    int applyMessageSent(@Param("conversationId") String conversationId,
+                         @Param("messageId") String messageId,
+                         @Param("senderId") String senderId,
+                         @Param("preview") String preview,
+                         @Param("sentAt") LocalDateTime sentAt,
+                         @Param("seq") long seq,
+                         @Param("increment") int increment,
+                         @Param("touchedAt") LocalDateTime touchedAt);
+
+    // Moves the reader's watermark to the newest message and clears their unread counter in one row update
+    @Modifying
+    @Query("""
+        UPDATE Conversation c SET
+            c.initiatorUnreadCount = CASE WHEN c.initiator = :readerId THEN 0 ELSE c.initiatorUnreadCount END,
+            c.participantUnreadCount = CASE WHEN c.participant = :readerId THEN 0 ELSE c.participantUnreadCount END,
+            c.initiatorReadUpToAt = CASE WHEN c.initiator = :readerId THEN c.lastMessageAt ELSE c.initiatorReadUpToAt END,
+            c.initiatorReadUpToId = CASE WHEN c.initiator = :readerId THEN c.lastMessageId ELSE c.initiatorReadUpToId END,
+            c.initiatorReadUpToSeq = CASE WHEN c.initiator = :readerId THEN c.lastMessageSeq ELSE c.initiatorReadUpToSeq END,
+            c.initiatorReadAt = CASE WHEN c.initiator = :readerId THEN :touchedAt ELSE c.initiatorReadAt END,
+            c.participantReadUpToAt = CASE WHEN c.participant = :readerId THEN c.lastMessageAt ELSE c.participantReadUpToAt END,
+            c.participantReadUpToId = CASE WHEN c.participant = :readerId THEN c.lastMessageId ELSE c.participantReadUpToId END,
+            c.participantReadUpToSeq = CASE WHEN c.participant = :readerId THEN c.lastMessageSeq ELSE c.participantReadUpToSeq END,
+            c.participantReadAt = CASE WHEN c.participant = :readerId THEN :touchedAt ELSE c.participantReadAt END,
+            c.updatedAt = :touchedAt
+        WHERE c.id = :conversationId
+    """)
+    int advanceReadWatermark(@Param("conversationId") String conversationId,
+                             @Param("readerId") String readerId,
+                             @Param("touchedAt") LocalDateTime touchedAt);
+
+    @Query("""
+        SELECT CASE WHEN c.initiator = :readerId THEN c.initiatorUnreadCount ELSE c.participantUnreadCount END
+        FROM Conversation c
+        WHERE c.id = :conversationId
+    """)
+    Optional<Integer> findUnreadCount(@Param("conversationId") String conversationId,
+                                      @Param("readerId") String readerId);
+
+    // Sorted on Conversation.activityAt(): a row written by an older instance may still lack last_message_at until
+    // the next startup backfill, and must neither end the pages nor produce a cursor that cannot be decoded
+    @Query("""
+        SELECT c FROM Conversation c
+        WHERE c.isActive = true
+          AND (c.initiator = :userId OR c.participant = :userId)
+          AND (
+                :query IS NULL OR :query = '' OR
+                LOWER(
+                    CASE
+                        WHEN c.initiator = :userId THEN c.participant
+                        ELSE c.initiator
+                    END
+                ) LIKE LOWER(CONCAT('%', :query, '%'))
+          )
+        ORDER BY COALESCE(c.lastMessageAt, c.createdAt) DESC, c.id DESC
+    """)
+    Slice<Conversation> findUserConversationsLatest(
+            @Param("userId") String userId,
+            @Param("query") String query,
+            Pageable pageable
+    );
+
+    @Query("""
+        SELECT c FROM Conversation c
+        WHERE c.isActive = true
+          AND (c.initiator = :userId OR c.participant = :userId)
+          AND (
+                :query IS NULL OR :query = '' OR
+                LOWER(
+                    CASE
+                        WHEN c.initiator = :userId THEN c.participant
+                        ELSE c.initiator
+                    END
+                ) LIKE LOWER(CONCAT('%', :query, '%'))
+          )
+          AND (COALESCE(c.lastMessageAt, c.createdAt) < :activityAt
+               OR (COALESCE(c.lastMessageAt, c.createdAt) = :activityAt AND c.id < :id))
+        ORDER BY COALESCE(c.lastMessageAt, c.createdAt) DESC, c.id DESC
+    """)
+    Slice<Conversation> findUserConversationsBefore(
+            @Param("userId") String userId,
+            @Param("query") String query,
+            @Param("activityAt") LocalDateTime activityAt,
+            @Param("id") String id,
+            Pageable pageable
+    );
+
+    @Query("""
+        SELECT c FROM Conversation c
+        WHERE (c.initiator = :userId OR c.participant = :userId)
+          AND (c.updatedAt > :updatedAt OR (c.updatedAt = :updatedAt AND c.id > :id))
+        ORDER BY c.updatedAt ASC, c.id ASC
+    """)
+    Slice<Conversation> findUserConversationsChangedSince(
+            @Param("userId") String userId,
+            @Param("updatedAt") LocalDateTime updatedAt,
+            @Param("id") String id,
+            Pageable pageable
+    );
 }
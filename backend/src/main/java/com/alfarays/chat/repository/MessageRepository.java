@@ -3,15 +3,17 @@ package com.alfarays.chat.repository;
 import com.alfarays.chat.entity.Message;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface MessageRepository extends JpaRepository<Message, String> {
@@ -19,24 +21,19 @@ public interface MessageRepository extends JpaRepository<Message, String> {
     @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId ORDER BY m.createdAt DESC")
     Page<Message> findByConversationId(@Param("conversationId") String conversationId, Pageable pageable);
 
-    @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId AND m.isRead = false AND m.senderId != :userId")
-    List<Message> findUnreadMessagesByConversationAndUserId(
-            @Param("conversationId") String conversationId,
-            @Param("userId") String userId
-    );
-
+    // One statement per conversation per ack window; only messages addressed to the recipient can be acknowledged
     @Modifying
-    @Transactional
-    @Query("UPDATE Message m SET m.isRead = true, m.readAt = CURRENT_TIMESTAMP WHERE m.conversation.id = :conversationId AND m.senderId != :userId AND m.isRead = false")
-    void markAsReadByConversationAndUserId(@Param("conversationId") String conversationId, @Param("userId") String userId);
-
-    @Query(
-            """
-            SELECT COUNT(m) FROM Message m WHERE m.conversation.id = :conversationId AND m.isRead = false AND m.senderId != :readerId
-           """
-    )
-    int countUnreadMessagesBySender(@Param("conversationId") String conversationId,
-                                    @Param("readerId") String readerId);
+    @Query("""
+            UPDATE Message m SET m.deliveredAt = :deliveredAt
+            WHERE m.conversation.id = :conversationId
+              AND m.id IN :messageIds
+              AND m.senderId <> :recipientId
+              AND m.deliveredAt IS NULL
+            """)
+    int markDelivered(@Param("conversationId") String conversationId,
+                      @Param("recipientId") String recipientId,
+                      @Param("messageIds") Collection<String> messageIds,
+                      @Param("deliveredAt") LocalDateTime deliveredAt);
 
     @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId AND m.createdAt BETWEEN :startDate AND :endDate ORDER BY m.createdAt ASC")
     List<Message> findMessagesBetweenDates(
@@ -44,4 +41,38 @@ public interface MessageRepository extends JpaRepository<Message, String> {
             @Param("startDate") LocalDateTime startDate,
             @Param("endDate") LocalDateTime endDate
     );
+
+    // History pages follow seq, the order the tail cache and delta sync use, served by uk_messages_conversation_seq
+    @Query("SELECT m FROM Message m WHERE m.conversation.id = :conversationId ORDER BY m.seq DESC")
+    Slice<Message> findLatestByConversationId(@Param("conversationId") String conversationId, Pageable pageable);
+
+    @Query("""
+            SELECT m FROM Message m
+            WHERE m.conversation.id = :conversationId
+              AND m.seq < :beforeSeq
+            ORDER BY m.seq DESC
+            """)
+    Slice<Message> findBeforeSeq(@Param("conversationId") String conversationId,
+                                 @Param("beforeSeq") long beforeSeq,
+                                 Pageable pageable);
+
+    @Query("SELECT COALESCE(MAX(m.seq), 0) FROM Message m WHERE m.conversation.id = :conversationId")
+    long findMaxSeq(@Param("conversationId") String conversationId);
+
+    // Served by uk_messages_conversation_seq; upToSeq keeps sends that have not committed yet out of the window
+    @Query("""
+            SELECT m FROM Message m
+            WHERE m.conversation.id = :conversationId
+              AND m.seq > :sinceSeq
+              AND m.seq <= :upToSeq
+            ORDER BY m.seq ASC
+            """)
+    Slice<Message> findSinceSeq(@Param("conversationId") String conversationId,
+                                @Param("sinceSeq") long sinceSeq,
+                                @Param("upToSeq") long upToSeq,
+                                Pageable pageable);
+
+    @Query("SELECT m FROM Message m JOIN FETCH m.conversation WHERE m.senderId = :senderId AND m.clientMessageId = :clientMessageId")
+    Optional<Message> findBySenderAndClientMessageId(@Param("senderId") String senderId,
+                                                     @Param("clientMessageId") String clientMessageId);
 }
@@ -0,0 +1,43 @@
+package com.alfarays.chat.resource;
+
+import com.alfarays.chat.model.AffinityHint;
+import com.alfarays.chat.service.NodeAffinity;
+import com.alfarays.util.GlobalResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/affinity")
+@RequiredArgsConstructor
+public class AffinityResource {
+
+    /**
+     * /affinity?conversationId={conversationId}
+     * Node the caller should open its STOMP session on: the owner of the conversation it is about to use,
+     * or of the caller itself when none is given.
+     */
+
+    private final NodeAffinity nodeAffinity;
+
+    @GetMapping
+    public ResponseEntity<GlobalResponse<AffinityHint>> hint(@RequestParam(required = false) String conversationId) {
+        String route = conversationId != null && !conversationId.isBlank()
+                ? NodeAffinity.conversationRoute(conversationId)
+                : NodeAffinity.userRoute(extractUserId());
+        return ResponseEntity.ok(GlobalResponse.success(nodeAffinity.hint(route)));
+    }
+
+    private String extractUserId() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if(auth != null && auth.isAuthenticated()) {
+            return auth.getName();
+        }
+        return null;
+    }
+}
@@ -3,6 +3,7 @@ package com.alfarays.chat.resource;
 import com.alfarays.chat.model.ConversationResponse;
 import com.alfarays.chat.service.IConversationService;
 import com.alfarays.exceptions.AuthorizationException;
+import com.alfarays.util.CursorPage;
 import com.alfarays.util.GlobalResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -60,6 +61,66 @@ public class ConversationResource {
         return new ResponseEntity<>(conversationService.getUserConversations(userId, page, size, query), HttpStatus.OK);
     }
 
+    @GetMapping("/inbox")
+    public ResponseEntity<GlobalResponse<List<ConversationResponse>>> loadInbox(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(required = false) String query) {
+        String userId = extractUserId();
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("User not authenticated for fetching inbox");
+            throw new AuthorizationException("User not authenticated for fetching inbox");
+        }
+
+        if(page < 0 || size <= 0 || size > 100) {
+            log.warn("Invalid pagination parameters: page={}, size={}", page, size);
+            throw new AuthorizationException(String.format("Invalid pagination parameters: page=%s, size=%s", page, size));
+        }
+
+        log.info("Fetching inbox for user: {}", userId);
+        return new ResponseEntity<>(conversationService.getInbox(userId, page, size, query), HttpStatus.OK);
+    }
+
+    @GetMapping("/inbox/page")
+    public ResponseEntity<GlobalResponse<CursorPage<ConversationResponse>>> loadInboxPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String query) {
+        String userId = extractUserId();
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("User not authenticated for fetching inbox page");
+            throw new AuthorizationException("User not authenticated for fetching inbox page");
+        }
+
+        if(limit <= 0 || limit > 100) {
+            log.warn("Invalid inbox limit: {}", limit);
+            throw new AuthorizationException(String.format("Invalid inbox limit: %s", limit));
+        }
+
+        return new ResponseEntity<>(conversationService.getInboxPage(userId, cursor, limit, query), HttpStatus.OK);
+    }
+
+    @GetMapping("/inbox/changes")
+    public ResponseEntity<GlobalResponse<CursorPage<ConversationResponse>>> loadInboxChanges(
+            @RequestParam String since,
+            @RequestParam(defaultValue = "100") int limit) {
+        String userId = extractUserId();
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("User not authenticated for fetching inbox changes");
+            throw new AuthorizationException("User not authenticated for fetching inbox changes");
+        }
+
+        if(limit <= 0 || limit > 500) {
+            log.warn("Invalid inbox changes limit: {}", limit);
+            throw new AuthorizationException(String.format("Invalid inbox changes limit: %s", limit));
+        }
+
+        return new ResponseEntity<>(conversationService.getInboxChanges(userId, since, limit), HttpStatus.OK);
+    }
+
     @DeleteMapping("/{conversationId}")
     public ResponseEntity<GlobalResponse<String>> deleteConversation(
             @PathVariable String conversationId) {
@@ -0,0 +1,32 @@
+package com.alfarays.chat.resource;
+
+import com.alfarays.chat.service.ConnectionDrain;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/drain
+ * GET reports drain progress; POST, optionally with {"maxDelayMs": n}, starts draining this node.
+ * Only reachable from the pod itself, see CustomSecurityConfiguration.
+ */
+@Component
+@Endpoint(id = "drain")
+@RequiredArgsConstructor
+public class DrainEndpoint {
+
+    private final ConnectionDrain connectionDrain;
+
+    @ReadOperation
+    public ConnectionDrain.Progress progress() {
+        return connectionDrain.progress();
+    }
+
+    @WriteOperation
+    public ConnectionDrain.Progress start(@Nullable Long maxDelayMs) {
+        return connectionDrain.start(maxDelayMs);
+    }
+}
@@ -4,8 +4,10 @@ import com.alfarays.chat.model.MessageRequest;
 import com.alfarays.chat.model.MessageResponse;
 import com.alfarays.chat.service.IMessageService;
 import com.alfarays.util.GlobalResponse;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -20,16 +22,25 @@ public class MessageResource {
 
     /**
      * /messages/conversation/${conversationId}
+     * /messages/conversation/{conversationId}/history?before={cursor}&limit={limit}
      * /messages/conversation/{conversationId}/mark-read
      * /messages/conversation/{conversationId}/unread-count
+     * /messages/conversation/{conversationId}/sync?since={seq}&limit={limit}
      */
 
     private final IMessageService messageService;
 
     @PostMapping
-    public ResponseEntity<GlobalResponse<MessageResponse>> send(@RequestBody MessageRequest request) {
+    public ResponseEntity<GlobalResponse<MessageResponse>> send(@Valid @RequestBody MessageRequest request) {
         String sender = extractUserId();
-        return ResponseEntity.ok(messageService.send(request, sender));
+        try {
+            return ResponseEntity.ok(messageService.send(request, sender));
+        } catch(DataIntegrityViolationException e) {
+            // A retry that raced its original: the unique key kept the second row out, so answer with the first
+            if(request.clientMessageId() == null) throw e;
+            return ResponseEntity.ok(GlobalResponse.success(messageService.findSent(sender, request.clientMessageId())
+                    .orElseThrow(() -> e)));
+        }
     }
 
     @GetMapping("/conversation/{conversationId}")
@@ -61,6 +72,54 @@ public class MessageResource {
         );
     }
 
+    @GetMapping("/conversation/{conversationId}/history")
+    public ResponseEntity<?> getMessageHistory(
+            @PathVariable String conversationId,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit) {
+        String userId = extractUserId();
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("User not authenticated for fetching message history");
+            return null;
+        }
+
+        if(limit <= 0 || limit > 200) {
+            log.warn("Invalid history limit: {}", limit);
+            return null;
+        }
+
+        log.info("Fetching message history for conversation: {} by user: {}", conversationId, userId);
+
+        return new ResponseEntity<>(
+                messageService.getMessageHistory(conversationId, userId, before, limit), HttpStatus.OK
+        );
+    }
+
+    @GetMapping("/conversation/{conversationId}/sync")
+    public ResponseEntity<?> sync(
+            @PathVariable String conversationId,
+            @RequestParam(defaultValue = "0") long since,
+            @RequestParam(defaultValue = "200") int limit) {
+        String userId = extractUserId();
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("User not authenticated for syncing messages");
+            return null;
+        }
+
+        if(since < 0 || limit <= 0 || limit > 1000) {
+            log.warn("Invalid sync parameters: since={}, limit={}", since, limit);
+            return null;
+        }
+
+        log.debug("Syncing conversation: {} for user: {} since seq: {}", conversationId, userId, since);
+
+        return new ResponseEntity<>(
+                messageService.sync(conversationId, userId, since, limit), HttpStatus.OK
+        );
+    }
+
     @PutMapping("/conversation/{conversationId}/mark-read")
     public ResponseEntity<?> markMessagesAsRead(@PathVariable String conversationId) {
         String userId = extractUserId();
@@ -1,17 +1,35 @@
 package com.alfarays.chat.resource;
 
+import com.alfarays.chat.model.ChatError;
 import com.alfarays.chat.model.ChatMessageRequest;
+import com.alfarays.chat.model.DeliveredAckRequest;
 import com.alfarays.chat.model.MarkReadRequest;
+import com.alfarays.chat.model.SyncRequest;
 import com.alfarays.chat.model.TypingIndicatorRequest;
+import com.alfarays.chat.service.ConversationDispatcher;
+import com.alfarays.chat.service.DeliveryAckAggregator;
+import com.alfarays.chat.service.IMessageService;
+import com.alfarays.chat.service.MessageWriteBehindPipeline;
+import com.alfarays.chat.service.ReadReceiptCoalescer;
 import com.alfarays.chat.service.WebSocketService;
+import com.alfarays.exceptions.AuthorizationException;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.handler.annotation.support.MethodArgumentNotValidException;
+import org.springframework.messaging.simp.annotation.SendToUser;
 import org.springframework.stereotype.Controller;
+import org.springframework.validation.FieldError;
 import org.springframework.web.util.HtmlUtils;
 
 import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
 
 @Controller
 @RequiredArgsConstructor
@@ -19,23 +37,53 @@ import java.security.Principal;
 public class WebSocketMessageResource {
 
     private final WebSocketService webSocketService;
+    private final MessageWriteBehindPipeline messageWriteBehindPipeline;
+    private final ReadReceiptCoalescer readReceiptCoalescer;
+    private final DeliveryAckAggregator deliveryAckAggregator;
+    private final ConversationDispatcher conversationDispatcher;
+    private final IMessageService messageService;
 
     @MessageMapping("/chat.sendMessage")
-    public void handleChatMessage(@Payload ChatMessageRequest request, Principal principal) {
+    public void handleChatMessage(@Valid @Payload ChatMessageRequest request, Principal principal) {
         if(principal == null) {
             log.warn("Received message from unauthenticated user");
             return;
         }
 
+        if(request.conversationId() == null || request.content() == null || request.content().isBlank()) {
+            log.warn("Rejected empty chat message from {}", principal.getName());
+            return;
+        }
+
         String sender = principal.getName();
         log.debug("Received chat message from user: {}", sender);
         String sanitizedContent = HtmlUtils.htmlEscape(request.content());
 
-        webSocketService.sendPrivateMessage(
-                request.conversationId(),
-                sender,
-                sanitizedContent
-        );
+        // Sends in the same conversation are persisted and fanned out strictly in arrival order
+        conversationDispatcher.dispatch(request.conversationId(),
+                () -> send(request.conversationId(), sender, sanitizedContent, request.clientMessageId()),
+                reportTo(sender, request.conversationId(), request.clientMessageId()));
+    }
+
+    private void send(String conversationId, String sender, String content, String clientMessageId) {
+        // A retried frame is answered with the original message instead of a second row and broadcast
+        if(webSocketService.replayIfSent(sender, clientMessageId)) {
+            return;
+        }
+
+        if(messageWriteBehindPipeline.isEnabled()) {
+            // No synchronous fallback: it would commit ahead of the messages still waiting in the ring
+            if(!messageWriteBehindPipeline.submit(conversationId, sender, content, clientMessageId)) {
+                throw new AuthorizationException("Server is busy, the message was not sent. Please try again.", HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            return;
+        }
+
+        try {
+            webSocketService.sendPrivateMessage(conversationId, sender, content, clientMessageId);
+        } catch(DataIntegrityViolationException e) {
+            if(clientMessageId == null || !webSocketService.replayFromStore(sender, clientMessageId)) throw e;
+        }
     }
 
     @MessageMapping("/chat.typing")
@@ -60,8 +108,41 @@ public class WebSocketMessageResource {
         String reader = principal.getName();
         log.debug("User {} marked conversation {} as read", reader, request.conversationId());
 
-        // Delegate to service (which updates DB and sends WebSocket notification to partner)
-        webSocketService.markConversationAsRead(request.conversationId(), reader);
+        // Bursts of mark-read from focus and scroll events are coalesced before they reach the database
+        conversationDispatcher.dispatch(request.conversationId(),
+                () -> readReceiptCoalescer.request(request.conversationId(), reader),
+                reportTo(reader, request.conversationId(), null));
+    }
+
+    @MessageMapping("/chat.delivered")
+    public void handleDeliveredAck(@Valid @Payload DeliveredAckRequest request, Principal principal) {
+        if(principal == null || request.conversationId() == null || request.messageIds() == null) {
+            log.warn("Invalid delivered ack attempt");
+            return;
+        }
+
+        // Acks are aggregated per conversation and applied once per window
+        String recipient = principal.getName();
+        conversationDispatcher.dispatch(request.conversationId(),
+                () -> deliveryAckAggregator.acknowledge(request.conversationId(), recipient, request.messageIds()),
+                reportTo(recipient, request.conversationId(), null));
+    }
+
+    @MessageMapping("/chat.sync")
+    public void handleSync(@Payload SyncRequest request, Principal principal) {
+        if(principal == null || request.conversationId() == null) {
+            log.warn("Invalid sync attempt");
+            return;
+        }
+
+        String userId = principal.getName();
+        long since = request.sinceSeq() == null ? 0 : Math.max(request.sinceSeq(), 0);
+        int limit = request.limit() == null ? 200 : Math.min(Math.max(request.limit(), 1), 1000);
+
+        // Runs in order with the conversation's other inbound work, after any send submitted before it
+        conversationDispatcher.dispatch(request.conversationId(), () -> webSocketService.sendSync(userId,
+                messageService.sync(request.conversationId(), userId, since, limit).getData()),
+                reportTo(userId, request.conversationId(), null));
     }
 
     @MessageMapping("/get-partner-status")
@@ -70,4 +151,24 @@ public class WebSocketMessageResource {
         webSocketService.syncPartnerStatuses(requester);
     }
 
+    @MessageExceptionHandler(MethodArgumentNotValidException.class)
+    @SendToUser(destinations = "/queue/errors", broadcast = false)
+    public ChatError handleInvalidPayload(MethodArgumentNotValidException e) {
+        FieldError fieldError = e.getBindingResult() != null ? e.getBindingResult().getFieldError() : null;
+        return ChatError.builder()
+                .message(fieldError != null ? fieldError.getDefaultMessage() : "Invalid request.")
+                .timestamp(LocalDateTime.now().toString())
+                .build();
+    }
+
+    // Failures on a lane are answered with an error frame; only our own rejections carry their reason to the client
+    private Consumer<Exception> reportTo(String userId, String conversationId, String clientMessageId) {
+        return e -> webSocketService.sendError(userId, ChatError.builder()
+                .conversationId(conversationId)
+                .clientMessageId(clientMessageId)
+                .message(e instanceof AuthorizationException ? e.getMessage() : "The request could not be processed. Please try again.")
+                .timestamp(LocalDateTime.now().toString())
+                .build());
+    }
+
 }
@@ -0,0 +1,148 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.AffinityHint;
+import com.alfarays.user.service.PresenceRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Moves the STOMP sessions of this node elsewhere before it stops, instead of dropping them all at once.
+ * Draining refuses readiness and new {@code /ws} handshakes, leaves the affinity ring, and tells each connected
+ * user to reconnect to its new owner after a random delay of up to {@code application.chat.drain.max-delay-ms}.
+ * Sessions closing while draining get {@code offline-grace-ms} of grace, so partners do not see a user who is
+ * only moving go OFFLINE. Starts from the Actuator {@code drain} endpoint, or on shutdown, which then waits up
+ * to {@code timeout-ms} for the sessions to leave before the broker closes the rest. With no other live node there
+ * is nowhere to move sessions to, so nothing is drained and shutdown does not wait.
+ */
+@Component
+@Slf4j
+public class ConnectionDrain {
+
+    private final NodeAffinity nodeAffinity;
+    private final PresenceRegistry registry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long maxDelayMillis;
+    private final long offlineGraceMillis;
+    private final long timeoutMillis;
+
+    private volatile Instant startedAt;
+    private volatile int sessionsAtStart;
+    private volatile int usersHinted;
+
+    public ConnectionDrain(@Value("${application.chat.drain.max-delay-ms:10000}") long maxDelayMillis,
+                           @Value("${application.chat.drain.offline-grace-ms:30000}") long offlineGraceMillis,
+                           @Value("${application.chat.drain.timeout-ms:20000}") long timeoutMillis,
+                           NodeAffinity nodeAffinity,
+                           PresenceRegistry registry,
+                           ApplicationEventPublisher eventPublisher,
+                           MeterRegistry meterRegistry) {
+        this.maxDelayMillis = maxDelayMillis;
+        this.offlineGraceMillis = offlineGraceMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.nodeAffinity = nodeAffinity;
+        this.registry = registry;
+        this.eventPublisher = eventPublisher;
+
+        Gauge.builder("chat.drain.sessions.remaining", this, drain -> drain.isDraining() ? nodeAffinity.localSessions() : 0)
+                .description("STOMP sessions still on this node while it drains")
+                .register(meterRegistry);
+    }
+
+    public boolean isDraining() {
+        return startedAt != null;
+    }
+
+    /**
+     * Grace window for a session that closes while this node drains.
+     */
+    public long offlineGraceMillis() {
+        return offlineGraceMillis;
+    }
+
+    /**
+     * Starts draining, spreading reconnects over {@code maxDelayMillis} or the configured default.
+     * Starting again only reports progress.
+     */
+    public synchronized Progress start(Long maxDelayMillis) {
+        if(isDraining()) return progress();
+
+        if(!hasPeer()) {
+            log.info("Not draining node {}: no other live node to move its sessions to", registry.nodeId());
+            return progress();
+        }
+
+        long spread = maxDelayMillis != null && maxDelayMillis >= 0 ? maxDelayMillis : this.maxDelayMillis;
+        startedAt = Instant.now();
+        sessionsAtStart = nodeAffinity.localSessions();
+
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        try {
+            registry.drain();
+        } catch(Exception e) {
+            log.warn("Marking node {} as draining in the presence registry failed", registry.nodeId(), e);
+        }
+        // Rebuild the ring without this node so every hint names a node that stays
+        nodeAffinity.refresh();
+        usersHinted = nodeAffinity.evacuate(AffinityHint.DRAIN, spread);
+
+        log.info("Draining node {}: {} sessions, {} users asked to reconnect within {} ms",
+                registry.nodeId(), sessionsAtStart, usersHinted, spread);
+        return progress();
+    }
+
+    public Progress progress() {
+        Instant started = startedAt;
+        return new Progress(
+                started != null,
+                started,
+                sessionsAtStart,
+                started != null ? nodeAffinity.localSessions() : sessionsAtStart,
+                usersHinted
+        );
+    }
+
+    /**
+     * Runs before the lifecycle stops the message broker and the web server, so sessions still open here
+     * have had their chance to move by the time they are closed.
+     */
+    @EventListener
+    public void onShutdown(ContextClosedEvent event) {
+        if(!start(null).draining()) return;
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while(nodeAffinity.localSessions() > 0 && System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(250);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("Drain of node {} ended with {} of {} sessions left",
+                registry.nodeId(), nodeAffinity.localSessions(), sessionsAtStart);
+    }
+
+    // Checked before this node marks itself draining, which would take it out of its own live set
+    private boolean hasPeer() {
+        try {
+            return registry.liveNodes().keySet().stream().anyMatch(node -> !node.equals(registry.nodeId()));
+        } catch(Exception e) {
+            log.warn("Reading live nodes failed, draining node {} anyway", registry.nodeId(), e);
+            return true;
+        }
+    }
+
+    public record Progress(boolean draining, Instant startedAt, int sessionsAtStart, int sessionsRemaining,
+                           int usersHinted) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.ConversationPartner;
+import com.alfarays.chat.repository.ConversationRepository;
+import com.alfarays.user.service.PresenceStore;
+import com.alfarays.user.service.UserCardService;
+import com.alfarays.util.AfterCommit;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cached adjacency of active conversations per user: conversation id to partner email.
+ * A user's entry is loaded on first use with one uncapped projection query, kept current by
+ * conversation creation and deletion after commit, and evicted once the user has been offline
+ * for {@code application.chat.contacts.idle-ms}.
+ * <p>
+ * With {@code application.chat.state.store=database}, conversations created or deleted on another instance never
+ * reach this one, so an entry is only trusted for {@code shared-ttl-ms} after it was loaded and then reloaded.
+ */
+@Component
+@Slf4j
+public class ContactGraph {
+
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    private final ConversationRepository conversationRepository;
+    private final PresenceStore presenceStore;
+    private final ConcurrentHashMap<String, Adjacency> adjacency = new ConcurrentHashMap<>();
+    private final AtomicLong mutations = new AtomicLong();
+    private final long idleMillis;
+    private final long ttlMillis;
+
+    public ContactGraph(@Value("${application.chat.contacts.idle-ms:900000}") long idleMillis,
+                        @Value("${application.chat.contacts.shared-ttl-ms:5000}") long sharedTtlMillis,
+                        @Value("${application.chat.state.store:memory}") String stateStore,
+                        ConversationRepository conversationRepository,
+                        PresenceStore presenceStore,
+                        MeterRegistry meterRegistry) {
+        this.idleMillis = idleMillis;
+        this.ttlMillis = "database".equalsIgnoreCase(stateStore) ? sharedTtlMillis : 0;
+        this.conversationRepository = conversationRepository;
+        this.presenceStore = presenceStore;
+
+        Gauge.builder("chat.contacts.users", adjacency, Map::size)
+                .description("Users whose conversation partners are cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Partner emails of every active conversation of {@code userId}.
+     */
+    public Collection<String> partnersOf(String userId) {
+        return Collections.unmodifiableCollection(load(userId).partners.values());
+    }
+
+    /**
+     * The other member of {@code conversationId}, or empty when {@code userId} is not a member.
+     * Inactive conversations are not cached, so they fall back to the database.
+     */
+    public Optional<String> partnerIn(String userId, String conversationId) {
+        String partner = load(userId).partners.get(conversationId);
+        if(partner != null) return Optional.of(partner);
+
+        return conversationRepository.findById(conversationId)
+                .filter(conversation -> userId.equals(conversation.getInitiator()) || userId.equals(conversation.getParticipant()))
+                .map(conversation -> userId.equals(conversation.getInitiator())
+                        ? conversation.getParticipant()
+                        : conversation.getInitiator());
+    }
+
+    public void linkAfterCommit(String conversationId, String initiator, String participant) {
+        AfterCommit.run(() -> {
+            mutations.incrementAndGet();
+            update(initiator, adjacent -> adjacent.put(conversationId, participant));
+            update(participant, adjacent -> adjacent.put(conversationId, initiator));
+        });
+    }
+
+    public void unlinkAfterCommit(String conversationId, String initiator, String participant) {
+        AfterCommit.run(() -> {
+            mutations.incrementAndGet();
+            update(initiator, adjacent -> adjacent.remove(conversationId));
+            update(participant, adjacent -> adjacent.remove(conversationId));
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${application.chat.contacts.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        int before = adjacency.size();
+        adjacency.entrySet().removeIf(entry ->
+                now - entry.getValue().lastAccess > idleMillis && !presenceStore.isOnline(entry.getKey()));
+
+        int evicted = before - adjacency.size();
+        if(evicted > 0) {
+            log.debug("Evicted {} idle contact lists", evicted);
+        }
+    }
+
+    private Adjacency load(String userId) {
+        String key = UserCardService.key(userId);
+        Adjacency cached = adjacency.get(key);
+        if(cached != null) {
+            long now = System.currentTimeMillis();
+            if(ttlMillis <= 0 || now - cached.loadedAt <= ttlMillis) {
+                cached.lastAccess = now;
+                return cached;
+            }
+            adjacency.remove(key, cached);
+        }
+
+        // Reload if a conversation was created or deleted while the query ran, so the change is not lost
+        Adjacency loaded = null;
+        for(int attempt = 1; attempt <= MAX_LOAD_ATTEMPTS; attempt++) {
+            long seen = mutations.get();
+            loaded = new Adjacency();
+            for(ConversationPartner row : conversationRepository.findActivePartners(userId)) {
+                loaded.partners.put(row.conversationId(), row.partner());
+            }
+
+            Adjacency raced = adjacency.putIfAbsent(key, loaded);
+            if(raced != null) return raced;
+            if(mutations.get() == seen || attempt == MAX_LOAD_ATTEMPTS) return loaded;
+            adjacency.remove(key, loaded);
+        }
+        return loaded;
+    }
+
+    private void update(String userId, Consumer<Map<String, String>> change) {
+        Adjacency cached = adjacency.get(UserCardService.key(userId));
+        if(cached != null) change.accept(cached.partners);
+    }
+
+    private static final class Adjacency {
+        private final Map<String, String> partners = new ConcurrentHashMap<>();
+        private final long loadedAt = System.currentTimeMillis();
+        private volatile long lastAccess = loadedAt;
+    }
+}
@@ -0,0 +1,115 @@
+package com.alfarays.chat.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs inbound STOMP work in order per conversation.
+ * Conversation ids are hashed onto {@code application.chat.dispatcher.stripes} single-threaded lanes, each
+ * with a bounded FIFO queue: two tasks for the same conversation always run one after the other in
+ * submission order, while different conversations proceed in parallel across lanes. A full lane blocks
+ * the submitting inbound thread instead of dropping or reordering work.
+ */
+@Component
+@Slf4j
+public class ConversationDispatcher {
+
+    private final ThreadPoolExecutor[] lanes;
+
+    public ConversationDispatcher(@Value("${application.chat.dispatcher.stripes:0}") int stripes,
+                                  @Value("${application.chat.dispatcher.queue-capacity:2048}") int queueCapacity,
+                                  MeterRegistry meterRegistry) {
+        int count = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors() * 2;
+        this.lanes = new ThreadPoolExecutor[count];
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        for(int i = 0; i < count; i++) {
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "conversation-lane-" + threadIndex.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (runnable, executor) -> {
+                        if(executor.isShutdown()) throw new RejectedExecutionException("Conversation dispatcher is shut down");
+                        try {
+                            executor.getQueue().put(runnable);
+                        } catch(InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted while waiting for a conversation lane", e);
+                        }
+                    });
+        }
+
+        Gauge.builder("chat.dispatcher.queue.depth", lanes, all -> {
+                    long depth = 0;
+                    for(ThreadPoolExecutor lane : all) depth += lane.getQueue().size();
+                    return depth;
+                })
+                .description("Inbound tasks waiting across all conversation lanes")
+                .register(meterRegistry);
+        Gauge.builder("chat.dispatcher.lanes", lanes, all -> all.length)
+                .description("Single-threaded lanes inbound work is striped over")
+                .register(meterRegistry);
+    }
+
+    public void dispatch(String conversationId, Runnable task) {
+        dispatch(conversationId, task, failure -> {
+        });
+    }
+
+    /**
+     * Like {@link #dispatch(String, Runnable)}, and hands a failure of {@code task} to {@code onFailure} on the
+     * same lane, e.g. to answer the sender with an error frame.
+     */
+    public void dispatch(String conversationId, Runnable task, Consumer<Exception> onFailure) {
+        lanes[lane(conversationId)].execute(() -> {
+            try {
+                task.run();
+            } catch(Exception e) {
+                log.error("Inbound task for conversation {} failed", conversationId, e);
+                try {
+                    onFailure.accept(e);
+                } catch(Exception reportFailure) {
+                    log.warn("Failed to report inbound failure for conversation {}", conversationId, reportFailure);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for(ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for(ThreadPoolExecutor lane : lanes) {
+            try {
+                if(!lane.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("Conversation lane did not drain in time, {} tasks dropped", lane.shutdownNow().size());
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int lane(String conversationId) {
+        int hash = conversationId == null ? 0 : conversationId.hashCode();
+        // Spread the bits so ids that differ only in their low characters still land on different lanes
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, lanes.length);
+    }
+}
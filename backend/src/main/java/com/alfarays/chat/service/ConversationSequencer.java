@@ -0,0 +1,221 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out per-conversation message sequence numbers from memory.
+ * A conversation's counter is seeded once from {@code MAX(seq)} and then advanced under its own monitor, so
+ * a send never takes a row lock to number a message. Every number stays in flight until the sending
+ * transaction completes; {@link #stableSeq} is the highest number below which nothing is still in flight,
+ * which lets a delta sync never skip past a message that commits late. A rolled-back send leaves a hole in
+ * the numbering, which syncing on "greater than" tolerates. The unique (conversation_id, seq) index is the
+ * backstop: a rollback with nothing else in flight drops the counter so the next send reseeds it. A send retried
+ * after its rollback can {@link #reuse} its number if nobody has taken it since. Nothing is seeded before
+ * {@link MessageSequenceBackfill} has numbered rows stored without a sequence.
+ * <p>
+ * With {@code application.chat.state.store=database}, for several instances, numbers are taken from
+ * {@code last_message_seq} on the conversation row instead. The row stays locked until the sending transaction
+ * completes (the summary update locks it anyway), so sends of a conversation commit in number order on every
+ * instance and the committed {@code MAX(seq)} is always stable.
+ */
+@Component
+@DependsOn("messageSequenceBackfill")
+@Slf4j
+public class ConversationSequencer {
+
+    private static final String ALLOCATE =
+            "UPDATE _conversations SET last_message_seq = LAST_INSERT_ID(COALESCE(last_message_seq, 0) + 1) WHERE id = ?";
+    private static final String ALLOCATED = "SELECT LAST_INSERT_ID()";
+    private static final String RECLAIM =
+            "UPDATE _conversations SET last_message_seq = ? WHERE id = ? AND COALESCE(last_message_seq, 0) < ?";
+    private static final int MAX_RELEASED = 1024;
+
+    private final MessageRepository messageRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean databaseBacked;
+    private final ConcurrentHashMap<String, Sequence> sequences = new ConcurrentHashMap<>();
+    private final long idleMillis;
+
+    public ConversationSequencer(@Value("${application.chat.sequence.idle-ms:900000}") long idleMillis,
+                                 @Value("${application.chat.state.store:memory}") String stateStore,
+                                 MessageRepository messageRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry) {
+        this.idleMillis = idleMillis;
+        this.databaseBacked = "database".equalsIgnoreCase(stateStore);
+        this.messageRepository = messageRepository;
+        this.jdbcTemplate = jdbcTemplate;
+
+        Gauge.builder("chat.sequence.conversations", sequences, Map::size)
+                .description("Conversations whose message sequence is held in memory")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Allocates the next sequence number of {@code conversationId}. Must be called inside the transaction
+     * that inserts the message; the number is released when that transaction completes.
+     */
+    public long next(String conversationId) {
+        if(databaseBacked) return allocate(conversationId);
+
+        while(true) {
+            Sequence sequence = load(conversationId);
+            long seq;
+            synchronized(sequence) {
+                if(sequence.retired) continue;
+                seq = ++sequence.allocated;
+                sequence.inFlight.add(seq);
+                sequence.lastAccess = System.currentTimeMillis();
+            }
+
+            track(conversationId, sequence, seq);
+            return seq;
+        }
+    }
+
+    /**
+     * Takes {@code seq} again for a send whose first transaction rolled back, so a retried message keeps the number
+     * it was first given and clients syncing on it see no gap. Falls back to {@link #next} once another send has
+     * taken the number. Same transaction rules as {@link #next}.
+     */
+    public long reuse(String conversationId, long seq) {
+        if(databaseBacked) return reclaim(conversationId, seq);
+
+        while(true) {
+            Sequence sequence = load(conversationId);
+            synchronized(sequence) {
+                if(sequence.retired) continue;
+                // Above the counter nobody has taken it; below, only a rolled-back send may have given it back
+                if(!sequence.released.remove(seq) && seq <= sequence.allocated) break;
+                sequence.allocated = Math.max(sequence.allocated, seq);
+                sequence.inFlight.add(seq);
+                sequence.lastAccess = System.currentTimeMillis();
+            }
+
+            track(conversationId, sequence, seq);
+            return seq;
+        }
+        return next(conversationId);
+    }
+
+    /**
+     * Highest sequence number of {@code conversationId} such that every message numbered at or below it has
+     * either committed or been rolled back.
+     */
+    public long stableSeq(String conversationId) {
+        if(databaseBacked) return messageRepository.findMaxSeq(conversationId);
+
+        Sequence sequence = sequences.get(conversationId);
+        if(sequence != null) {
+            synchronized(sequence) {
+                if(!sequence.retired) return sequence.stable();
+            }
+        }
+        return messageRepository.findMaxSeq(conversationId);
+    }
+
+    @Scheduled(fixedDelayString = "${application.chat.sequence.evict-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        sequences.entrySet().removeIf(entry -> {
+            Sequence sequence = entry.getValue();
+            synchronized(sequence) {
+                if(now - sequence.lastAccess <= idleMillis || !sequence.inFlight.isEmpty()) return false;
+                sequence.retired = true;
+                return true;
+            }
+        });
+    }
+
+    private long allocate(String conversationId) {
+        // The row lock and LAST_INSERT_ID() both belong to the sending transaction's connection
+        requireTransaction();
+        if(jdbcTemplate.update(ALLOCATE, conversationId) == 0) {
+            throw new IllegalStateException("Conversation " + conversationId + " not found");
+        }
+        Long seq = jdbcTemplate.queryForObject(ALLOCATED, Long.class);
+        return seq != null ? seq : 0;
+    }
+
+    private long reclaim(String conversationId, long seq) {
+        // Numbers are handed out in order under the row lock, so one at or below the counter has been taken again
+        requireTransaction();
+        if(jdbcTemplate.update(RECLAIM, seq, conversationId, seq) == 1) return seq;
+        return allocate(conversationId);
+    }
+
+    private static void requireTransaction() {
+        if(!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Sequence numbers must be taken inside the sending transaction");
+        }
+    }
+
+    private void track(String conversationId, Sequence sequence, long seq) {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    release(conversationId, sequence, seq, status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            release(conversationId, sequence, seq, true);
+        }
+    }
+
+    private Sequence load(String conversationId) {
+        Sequence cached = sequences.get(conversationId);
+        if(cached != null) return cached;
+
+        // Seeded outside the map bin; a racing seed for the same conversation simply loses
+        Sequence seeded = new Sequence(messageRepository.findMaxSeq(conversationId));
+        Sequence raced = sequences.putIfAbsent(conversationId, seeded);
+        return raced != null ? raced : seeded;
+    }
+
+    private void release(String conversationId, Sequence sequence, long seq, boolean committed) {
+        synchronized(sequence) {
+            sequence.inFlight.remove(seq);
+            if(committed || sequence.retired) return;
+            if(!sequence.inFlight.isEmpty()) {
+                // The counter stays ahead of this number, which is left for the send's retry to reuse
+                sequence.released.add(seq);
+                if(sequence.released.size() > MAX_RELEASED) sequence.released.pollFirst();
+                return;
+            }
+            sequence.retired = true;
+        }
+        sequences.remove(conversationId, sequence);
+        log.debug("Sequence of conversation {} dropped after a rolled-back send", conversationId);
+    }
+
+    private static final class Sequence {
+        private long allocated;
+        private final TreeSet<Long> inFlight = new TreeSet<>();
+        private final TreeSet<Long> released = new TreeSet<>();
+        private long lastAccess = System.currentTimeMillis();
+        private boolean retired;
+
+        private Sequence(long allocated) {
+            this.allocated = allocated;
+        }
+
+        private long stable() {
+            return inFlight.isEmpty() ? allocated : inFlight.first() - 1;
+        }
+    }
+}
@@ -7,21 +7,28 @@ import com.alfarays.chat.model.MessageResponse;
 import com.alfarays.chat.repository.ConversationRepository;
 import com.alfarays.exceptions.AuthorizationException;
 import com.alfarays.exceptions.ResourceNotFoundException;
+import com.alfarays.user.model.UserCard;
 import com.alfarays.user.model.UserResponse;
-import com.alfarays.user.repository.UserRepository;
+import com.alfarays.user.service.UserCardService;
+import com.alfarays.util.CursorPage;
 import com.alfarays.util.GlobalResponse;
+import com.alfarays.util.KeysetCursor;
 import com.alfarays.util.Util;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -30,9 +37,13 @@ import java.util.stream.Stream;
 @Slf4j
 public class ConversationService implements IConversationService {
 
+    // Sync tokens trail the clock so rows from transactions still in flight are picked up by the next delta
+    private static final Duration SYNC_OVERLAP = Duration.ofSeconds(5);
+
     private final ConversationRepository conversationRepository;
     private final IMessageService messageService;
-    private final UserRepository userRepository;
+    private final UserCardService userCardService;
+    private final ContactGraph contactGraph;
 
     @Override
     @Transactional
@@ -61,7 +72,7 @@ public class ConversationService implements IConversationService {
                 .findByKey(key)
                 .map(conversation -> {
                     log.info("Existing conversation found: {}", key);
-                    return GlobalResponse.success(mapToResponse(conversation, initiator));
+                    return GlobalResponse.success(mapToResponse(conversation, initiator, partnerCard(conversation, initiator)));
                 })
                 .orElseGet(() -> {
                     log.info("Creating new conversation: {}", key);
@@ -75,7 +86,8 @@ public class ConversationService implements IConversationService {
                             .build();
 
                     Conversation saved = conversationRepository.save(conversation);
-                    return GlobalResponse.success(mapToResponse(saved, initiator));
+                    contactGraph.linkAfterCommit(saved.getId(), initiator, participant);
+                    return GlobalResponse.success(mapToResponse(saved, initiator, partnerCard(saved, initiator)));
                 });
     }
 
@@ -100,8 +112,10 @@ public class ConversationService implements IConversationService {
                             pageable
                     );
 
+            Map<String, UserCard> partners = resolvePartners(conversations, userId);
+
             List<ConversationResponse> responses = conversations.stream()
-                    .map(c -> mapToResponse(c, userId))
+                    .map(c -> mapToResponse(c, userId, partnerCard(partners, c, userId)))
                     .toList();
 
             return GlobalResponse.success(responses);
@@ -112,6 +126,118 @@ public class ConversationService implements IConversationService {
         }
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public GlobalResponse<List<ConversationResponse>> getInbox(String userId, int page, int size, String query) {
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("Invalid userId for fetching inbox");
+            throw new AuthorizationException("Invalid user ID");
+        }
+
+        try {
+            List<Conversation> conversations =
+                    conversationRepository.findUserConversationsFiltered(userId, query, PageRequest.of(page, size));
+
+            if(conversations.isEmpty()) {
+                return GlobalResponse.success(List.of());
+            }
+
+            Map<String, UserCard> partners = resolvePartners(conversations, userId);
+
+            // Summaries come straight from the denormalized columns on _conversations
+            List<ConversationResponse> responses = conversations.stream()
+                    .map(c -> mapToSummary(c, userId, partnerCard(partners, c, userId)))
+                    .toList();
+
+            return GlobalResponse.success(responses);
+
+        } catch(Exception e) {
+            log.error("Error fetching inbox for user: {}", userId, e);
+            throw new AuthorizationException("Error fetching conversations");
+        }
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public GlobalResponse<CursorPage<ConversationResponse>> getInboxPage(String userId, String cursor, int limit, String query) {
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("Invalid userId for fetching inbox page");
+            throw new AuthorizationException("Invalid user ID");
+        }
+
+        String syncToken = cursor == null || cursor.isBlank() ? newSyncToken() : null;
+        Pageable pageable = PageRequest.of(0, limit);
+
+        Slice<Conversation> slice;
+        if(cursor == null || cursor.isBlank()) {
+            slice = conversationRepository.findUserConversationsLatest(userId, query, pageable);
+        } else {
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            slice = conversationRepository.findUserConversationsBefore(userId, query, after.at(), after.id(), pageable);
+        }
+
+        List<Conversation> conversations = slice.getContent();
+        Map<String, UserCard> partners = resolvePartners(conversations, userId);
+
+        List<ConversationResponse> content = conversations.stream()
+                .map(c -> mapToSummary(c, userId, partnerCard(partners, c, userId)))
+                .toList();
+
+        Conversation last = conversations.isEmpty() ? null : conversations.get(conversations.size() - 1);
+        return GlobalResponse.success(CursorPage.<ConversationResponse>builder()
+                .content(content)
+                .size(content.size())
+                .hasMore(slice.hasNext())
+                .nextCursor(slice.hasNext() && last != null
+                        ? new KeysetCursor(last.activityAt(), last.getId()).encode()
+                        : null)
+                .syncToken(syncToken)
+                .build());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public GlobalResponse<CursorPage<ConversationResponse>> getInboxChanges(String userId, String since, int limit) {
+
+        if(userId == null || userId.isBlank()) {
+            log.warn("Invalid userId for fetching inbox changes");
+            throw new AuthorizationException("Invalid user ID");
+        }
+
+        if(since == null || since.isBlank()) {
+            throw new AuthorizationException("A sync token is required");
+        }
+
+        // Token is read before the query so nothing committed in between can fall behind it
+        String freshToken = newSyncToken();
+        KeysetCursor after = KeysetCursor.decode(since);
+
+        Slice<Conversation> slice = conversationRepository.findUserConversationsChangedSince(
+                userId, after.at(), after.id(), PageRequest.of(0, limit));
+
+        List<Conversation> conversations = slice.getContent();
+        Map<String, UserCard> partners = resolvePartners(conversations, userId);
+
+        List<ConversationResponse> content = conversations.stream()
+                .map(c -> mapToSummary(c, userId, partnerCard(partners, c, userId)))
+                .toList();
+
+        // While more changes are pending the client continues from the last row, otherwise from "now"
+        Conversation last = conversations.isEmpty() ? null : conversations.get(conversations.size() - 1);
+        String syncToken = slice.hasNext() && last != null
+                ? new KeysetCursor(last.getUpdatedAt(), last.getId()).encode()
+                : freshToken;
+
+        return GlobalResponse.success(CursorPage.<ConversationResponse>builder()
+                .content(content)
+                .size(content.size())
+                .hasMore(slice.hasNext())
+                .syncToken(syncToken)
+                .build());
+    }
+
     @Override
     @Transactional
     public GlobalResponse<String> deleteConversation(String conversationId, String userId) {
@@ -133,6 +259,7 @@ public class ConversationService implements IConversationService {
 
             conversation.setIsActive(false);
             conversationRepository.save(conversation);
+            contactGraph.unlinkAfterCommit(conversationId, conversation.getInitiator(), conversation.getParticipant());
             log.info("Conversation {} deleted by user {}", conversationId, userId);
 
             return GlobalResponse.success("Conversation deleted successfully");
@@ -149,34 +276,15 @@ public class ConversationService implements IConversationService {
     public GlobalResponse<ConversationResponse> getConversationById(String conversationId, String userId) {
         Conversation conversation = conversationRepository.findById(conversationId)
                 .orElseThrow(() -> new ResourceNotFoundException("Conversation not found: " + conversationId));
-        return GlobalResponse.success(mapToResponse(conversation, userId));
+        return GlobalResponse.success(mapToResponse(conversation, userId, partnerCard(conversation, userId)));
     }
 
-    private ConversationResponse mapToResponse(Conversation conversation, String currentUserId) {
-        // 1. Identify both entities to access profile photos and names
-        var initiatorUser = userRepository.findByEmail(conversation.getInitiator())
-                .orElseThrow(() -> new AuthorizationException("Initiator not found."));
-
-        var participantUser = userRepository.findByEmail(conversation.getParticipant())
-                .orElseThrow(() -> new AuthorizationException("Participant not found."));
-
-        // 2. Determine who the "Other User" is relative to the current logged-in user
-        boolean isCurrentUserParticipant = currentUserId.equals(participantUser.getEmail());
-        var otherUser = isCurrentUserParticipant ? initiatorUser : participantUser;
-
-        // 3. Logic for Avatar Path
-        String avatarPath = (otherUser.getProfile() != null)
-                ? otherUser.getProfile().getPath()
-                : "assets/images/default-avatar.png";
+    private ConversationResponse mapToResponse(Conversation conversation, String currentUserId, UserCard otherUser) {
+        // 1-3. Logic for Avatar Path of the "Other User" relative to the current logged-in user
+        String avatarPath = avatarPath(otherUser);
 
-        // 4. Calculate Unread Message Count
-        // This counts messages in this conversation where I am NOT the sender and I haven't read them yet
-        long unreadCount = conversation.getMessages() != null
-                ? conversation.getMessages().stream()
-                .filter(m -> !m.getSenderId().equals(currentUserId)) // Messages not sent by me
-                .filter(m -> !m.getIsRead())                        // Messages not yet read
-                .count()
-                : 0L;
+        // 4. Unread Message Count, maintained on the conversation row on every send / read
+        long unreadCount = conversation.unreadCountFor(currentUserId);
 
         // 5. Extract Last Message Content
         String lastMessageContent = conversation.getMessages() != null && !conversation.getMessages().isEmpty()
@@ -192,9 +300,11 @@ public class ConversationService implements IConversationService {
             messages = conversation.getMessages().stream()
                     .map(message -> MessageResponse.builder()
                             .id(message.getId())
-                            .readAt(message.getReadAt())
+                            .seq(message.getSeq())
+                            .deliveredAt(conversation.deliveredAt(message))
+                            .readAt(conversation.readAt(message))
                             .senderId(message.getSenderId())
-                            .isRead(message.getIsRead())
+                            .isRead(conversation.isRead(message))
                             .conversationId(message.getConversation().getId())
                             .content(message.getContent())
                             .createdAt(message.getCreatedAt())
@@ -205,27 +315,97 @@ public class ConversationService implements IConversationService {
 
         return ConversationResponse.builder()
                 .id(conversation.getId())
-                .name(name(otherUser.getFirstname(), otherUser.getLastname()))
+                .name(name(otherUser.firstname(), otherUser.lastname()))
                 .avatar(avatarPath)
-                .participant(
-                        UserResponse.builder()
-                                .lastSeen(otherUser.getLastLogin() != null ? otherUser.getLastLogin().toString() : LocalDateTime.now().toString())
-                                .email(otherUser.getEmail())
-                                .status("offline")
-                                .profile(avatarPath)
-                                .build()
-                )
+                .participant(toParticipant(otherUser, avatarPath))
                 .lastMessage(
                         MessageResponse.builder()
                                 .content(lastMessageContent)
                                 .createdAt(conversation.getLastMessageAt())
                                 .build()
                 )
+                .lastMessageAt(conversation.getLastMessageAt())
                 .messages(messages)
                 .unreadCount((int) unreadCount)
                 .build();
     }
 
+    private ConversationResponse mapToSummary(Conversation conversation, String currentUserId, UserCard otherUser) {
+        String avatarPath = avatarPath(otherUser);
+
+        return ConversationResponse.builder()
+                .id(conversation.getId())
+                .name(name(otherUser.firstname(), otherUser.lastname()))
+                .avatar(avatarPath)
+                .participant(toParticipant(otherUser, avatarPath))
+                .lastMessage(conversation.getLastMessageId() != null
+                        ? MessageResponse.builder()
+                        .id(conversation.getLastMessageId())
+                        .conversationId(conversation.getId())
+                        .seq(conversation.getLastMessageSeq())
+                        .senderId(conversation.getLastMessageSender())
+                        .content(conversation.getLastMessagePreview())
+                        .createdAt(conversation.getLastMessageAt())
+                        .build()
+                        : null)
+                .lastMessageAt(conversation.getLastMessageAt())
+                .unreadCount(conversation.unreadCountFor(currentUserId))
+                .active(conversation.getIsActive())
+                .build();
+    }
+
+    private Map<String, UserCard> resolvePartners(List<Conversation> conversations, String currentUserId) {
+        return userCardService.byEmails(
+                conversations.stream()
+                        .map(c -> partnerEmail(c, currentUserId))
+                        .collect(Collectors.toSet())
+        );
+    }
+
+    private UserCard partnerCard(Conversation conversation, String currentUserId) {
+        return userCardService.byEmail(partnerEmail(conversation, currentUserId))
+                .orElseThrow(() -> new AuthorizationException("Participant not found."));
+    }
+
+    private static UserCard partnerCard(Map<String, UserCard> partners, Conversation conversation, String currentUserId) {
+        UserCard card = partners.get(UserCardService.key(partnerEmail(conversation, currentUserId)));
+        if(card == null) {
+            throw new AuthorizationException("Participant not found.");
+        }
+        return card;
+    }
+
+    private static String partnerEmail(Conversation conversation, String currentUserId) {
+        return currentUserId.equalsIgnoreCase(conversation.getParticipant())
+                ? conversation.getInitiator()
+                : conversation.getParticipant();
+    }
+
+    private static String avatarPath(UserCard user) {
+        return (user.profile() != null)
+                ? user.profile()
+                : "assets/images/default-avatar.png";
+    }
+
+    private static UserResponse toParticipant(UserCard user, String avatarPath) {
+        return UserResponse.builder()
+                .lastSeen(lastSeen(user))
+                .email(user.email())
+                // Cards carry the live presence; the client expects it lower-cased
+                .status(user.status() != null ? user.status().toLowerCase(Locale.ROOT) : "offline")
+                .profile(avatarPath)
+                .build();
+    }
+
+    private static String lastSeen(UserCard user) {
+        LocalDateTime at = user.lastSeen() != null ? user.lastSeen() : user.lastLogin();
+        return at != null ? at.toString() : LocalDateTime.now().toString();
+    }
+
+    private static String newSyncToken() {
+        return new KeysetCursor(LocalDateTime.now().minus(SYNC_OVERLAP), "").encode();
+    }
+
     private String generateConversationKey(String user1, String user2) {
         return Stream.of(user1, user2)
                 .map(String::toLowerCase)
@@ -0,0 +1,123 @@
+package com.alfarays.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Fills the denormalized summary of conversations stored before it existed: last message and unread counters.
+ * Runs at startup once Hibernate has added the columns. Every send sets {@code last_message_id} in the same
+ * transaction as its insert, so a conversation with messages but no last message id has never been summarized;
+ * each one is filled by a single statement guarded on that, which a concurrent send or another starting
+ * instance simply makes a no-op. Conversations left without {@code last_message_at} or {@code updated_at},
+ * which inbox pages sort on and delta sync filters on, are given one as well, and a side with nothing unread
+ * but no read watermark is given one at the newest message.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationSummaryBackfill {
+
+    private static final String PENDING_SUMMARIES = """
+            SELECT c.id FROM _conversations c
+            WHERE c.last_message_id IS NULL
+              AND EXISTS (SELECT 1 FROM _messages m WHERE m.conversation_id = c.id)
+            """;
+
+    // Unread counts come from the per-row flag, the only read state these conversations have
+    private static final String FILL_SUMMARY = """
+            UPDATE _conversations c
+                JOIN (SELECT id, sender_id, content, created_at
+                      FROM _messages
+                      WHERE conversation_id = ?
+                      ORDER BY created_at DESC, id DESC
+                      LIMIT 1) last ON TRUE
+            SET c.last_message_id = last.id,
+                c.last_message_sender = last.sender_id,
+                c.last_message_preview = LEFT(last.content, 255),
+                c.last_message_at = last.created_at,
+                c.initiator_unread_count = (SELECT COUNT(*)
+                                            FROM _messages m
+                                            WHERE m.conversation_id = c.id
+                                              AND m.is_read = FALSE
+                                              AND m.sender_id <> c.initiator),
+                c.participant_unread_count = (SELECT COUNT(*)
+                                              FROM _messages m
+                                              WHERE m.conversation_id = c.id
+                                                AND m.is_read = FALSE
+                                                AND m.sender_id <> c.participant)
+            WHERE c.id = ?
+              AND c.last_message_id IS NULL
+            """;
+
+    // Only conversations without any message are left here once the summaries are filled
+    private static final String FILL_LAST_MESSAGE_AT =
+            "UPDATE _conversations SET last_message_at = created_at WHERE last_message_at IS NULL";
+
+    // Touched now rather than back-dated, so the next delta of every client picks the row up
+    private static final String FILL_UPDATED_AT =
+            "UPDATE _conversations SET updated_at = NOW(6) WHERE updated_at IS NULL";
+
+    // A side with nothing unread has read everything; older history keeps its per-row flag either way
+    private static final String FILL_INITIATOR_WATERMARK = """
+            UPDATE _conversations
+            SET initiator_read_up_to_at = last_message_at,
+                initiator_read_up_to_id = last_message_id,
+                initiator_read_up_to_seq = last_message_seq,
+                initiator_read_at = last_message_at
+            WHERE initiator_unread_count = 0
+              AND initiator_read_up_to_at IS NULL
+              AND last_message_id IS NOT NULL
+            """;
+
+    private static final String FILL_PARTICIPANT_WATERMARK = """
+            UPDATE _conversations
+            SET participant_read_up_to_at = last_message_at,
+                participant_read_up_to_id = last_message_id,
+                participant_read_up_to_seq = last_message_seq,
+                participant_read_at = last_message_at
+            WHERE participant_unread_count = 0
+              AND participant_read_up_to_at IS NULL
+              AND last_message_id IS NOT NULL
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    public void backfill() {
+        fillSummaries();
+        fillKeysetColumns();
+        fillReadWatermarks();
+    }
+
+    private void fillSummaries() {
+        List<String> pending = jdbcTemplate.queryForList(PENDING_SUMMARIES, String.class);
+        if(pending.isEmpty()) return;
+
+        log.info("Filling the summary of {} conversations stored without one", pending.size());
+        for(String conversationId : pending) {
+            jdbcTemplate.update(FILL_SUMMARY, conversationId, conversationId);
+        }
+    }
+
+    private void fillKeysetColumns() {
+        int lastMessageAt = jdbcTemplate.update(FILL_LAST_MESSAGE_AT);
+        int updatedAt = jdbcTemplate.update(FILL_UPDATED_AT);
+        if(lastMessageAt > 0 || updatedAt > 0) {
+            log.info("Filled last_message_at of {} and updated_at of {} conversations", lastMessageAt, updatedAt);
+        }
+    }
+
+    private void fillReadWatermarks() {
+        int watermarks = jdbcTemplate.update(FILL_INITIATOR_WATERMARK) + jdbcTemplate.update(FILL_PARTICIPANT_WATERMARK);
+        if(watermarks > 0) {
+            log.info("Filled {} read watermarks of conversations with nothing unread", watermarks);
+        }
+    }
+}
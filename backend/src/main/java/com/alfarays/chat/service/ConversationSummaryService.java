@@ -0,0 +1,69 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.entity.Message;
+import com.alfarays.chat.repository.ConversationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Keeps the denormalized summary columns on {@code _conversations} (last message, unread counters, read watermarks)
+ * in step with {@code _messages}. Every method must run inside the caller's write transaction so the
+ * summary commits or rolls back together with the message rows.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ConversationSummaryService {
+
+    static final int PREVIEW_LENGTH = 255;
+
+    private final ConversationRepository conversationRepository;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onMessageSaved(Message message) {
+        onMessagesSaved(message.getConversation().getId(), message.getSenderId(), message.getId(),
+                message.getContent(), message.getCreatedAt(), message.getSeq(), 1);
+    }
+
+    /**
+     * Applies {@code count} messages from one sender in one conversation, {@code lastMessageId} (at {@code lastSeq})
+     * being the newest of them.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onMessagesSaved(String conversationId, String senderId, String lastMessageId,
+                                String lastContent, LocalDateTime lastCreatedAt, long lastSeq, int count) {
+        int updated = conversationRepository.applyMessageSent(
+                conversationId,
+                lastMessageId,
+                senderId,
+                preview(lastContent),
+                lastCreatedAt,
+                lastSeq,
+                count,
+                LocalDateTime.now()
+        );
+
+        if(updated == 0) {
+            log.warn("Conversation summary not updated for message {}", lastMessageId);
+        }
+    }
+
+    /**
+     * Marks everything up to the newest message as read by {@code readerId}: a single write on the
+     * conversation row, however many messages were unread.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onConversationRead(String conversationId, String readerId) {
+        conversationRepository.advanceReadWatermark(conversationId, readerId, LocalDateTime.now());
+    }
+
+    static String preview(String content) {
+        if(content == null) return null;
+        return content.length() <= PREVIEW_LENGTH ? content : content.substring(0, PREVIEW_LENGTH);
+    }
+}
@@ -0,0 +1,115 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.util.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects delivered acks per (conversation, recipient) for {@code application.chat.delivery.window-ms}
+ * and hands each window to {@link WebSocketService#markDelivered} as one batch, so a burst of acks costs
+ * one UPDATE and one receipt to the sender instead of one per message.
+ */
+@Component
+@Slf4j
+public class DeliveryAckAggregator {
+
+    private final WebSocketService webSocketService;
+    private final ConversationDispatcher conversationDispatcher;
+    private final HashedTimingWheel windows;
+    private final long windowMillis;
+    private final int maxBatch;
+    private final ConcurrentHashMap<Key, Set<String>> pending = new ConcurrentHashMap<>();
+
+    private final Counter acks;
+    private final DistributionSummary batchSizes;
+
+    public DeliveryAckAggregator(@Value("${application.chat.delivery.window-ms:250}") long windowMillis,
+                                 @Value("${application.chat.delivery.max-batch:500}") int maxBatch,
+                                 @Value("${application.chat.delivery.timer-tick-ms:50}") long timerTickMillis,
+                                 @Qualifier("applicationTaskExecutor") Executor executor,
+                                 WebSocketService webSocketService,
+                                 ConversationDispatcher conversationDispatcher,
+                                 MeterRegistry meterRegistry) {
+        this.webSocketService = webSocketService;
+        this.conversationDispatcher = conversationDispatcher;
+        this.windowMillis = windowMillis;
+        this.maxBatch = maxBatch;
+        this.windows = new HashedTimingWheel("delivery-ack-timer", timerTickMillis, 256, executor);
+
+        this.acks = Counter.builder("chat.delivery.acks")
+                .description("Message ids acknowledged as delivered by clients")
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("chat.delivery.batch.size")
+                .description("Message ids applied per delivered-ack flush")
+                .register(meterRegistry);
+    }
+
+    public void acknowledge(String conversationId, String recipientId, Collection<String> messageIds) {
+        if(messageIds == null || messageIds.isEmpty()) return;
+
+        Key key = new Key(conversationId, recipientId);
+        boolean[] full = new boolean[1];
+        pending.compute(key, (k, ids) -> {
+            Set<String> batch = ids;
+            if(batch == null) {
+                batch = new LinkedHashSet<>();
+                Set<String> opened = batch;
+                // Flushed on the conversation's lane, in order with the acks and sends around it
+                windows.schedule(() -> conversationDispatcher.dispatch(k.conversationId(), () -> flush(k, opened)),
+                        windowMillis, TimeUnit.MILLISECONDS);
+            }
+            for(String id : messageIds) {
+                if(id != null && !id.isBlank()) batch.add(id);
+            }
+            full[0] = batch.size() >= maxBatch;
+            return batch;
+        });
+        acks.increment(messageIds.size());
+
+        // A very large burst is flushed early instead of growing the batch without bound
+        if(full[0]) {
+            Set<String> batch = pending.get(key);
+            if(batch != null) flush(key, batch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        windows.close();
+        pending.forEach(this::flush);
+    }
+
+    private void flush(Key key, Set<String> batch) {
+        // Claim by identity: a later window's batch holding the same ids must not be flushed from here
+        boolean[] claimed = new boolean[1];
+        pending.computeIfPresent(key, (k, current) -> {
+            if(current != batch) return current;
+            claimed[0] = true;
+            return null;
+        });
+        if(!claimed[0] || batch.isEmpty()) return;
+
+        batchSizes.record(batch.size());
+        try {
+            webSocketService.markDelivered(key.conversationId(), key.recipientId(), batch);
+        } catch(Exception e) {
+            log.error("Failed to apply {} delivered acks for conversation {}", batch.size(), key.conversationId(), e);
+        }
+    }
+
+    private record Key(String conversationId, String recipientId) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.alfarays.chat.service;
 
 import com.alfarays.chat.model.ConversationResponse;
+import com.alfarays.util.CursorPage;
 import com.alfarays.util.GlobalResponse;
 
 import java.util.List;
@@ -10,6 +11,12 @@ public interface IConversationService {
 
     GlobalResponse<List<ConversationResponse>> getUserConversations(String userId, int page, int size, String query);
 
+    GlobalResponse<List<ConversationResponse>> getInbox(String userId, int page, int size, String query);
+
+    GlobalResponse<CursorPage<ConversationResponse>> getInboxPage(String userId, String cursor, int limit, String query);
+
+    GlobalResponse<CursorPage<ConversationResponse>> getInboxChanges(String userId, String since, int limit);
+
     GlobalResponse<String> deleteConversation(String conversationId, String userId);
 
     GlobalResponse<ConversationResponse> getConversationById(String conversationId, String authenticatorUsername);
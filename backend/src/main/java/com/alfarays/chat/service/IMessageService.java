@@ -1,14 +1,19 @@
 package com.alfarays.chat.service;
 
+import com.alfarays.chat.model.ConversationSync;
 import com.alfarays.chat.model.MessageRequest;
 import com.alfarays.chat.model.MessageResponse;
+import com.alfarays.util.CursorPage;
 import com.alfarays.util.GlobalResponse;
-import org.springframework.data.domain.Page;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface IMessageService {
     GlobalResponse<MessageResponse> send(MessageRequest request, String senderId);
     GlobalResponse<List<MessageResponse>> getConversationMessages(String conversationId, String userId, int page, int size);
+    GlobalResponse<CursorPage<MessageResponse>> getMessageHistory(String conversationId, String userId, String before, int limit);
     void markMessagesAsRead(String conversationId, String userId);
+    Optional<MessageResponse> findSent(String senderId, String clientMessageId);
+    GlobalResponse<ConversationSync> sync(String conversationId, String userId, long sinceSeq, int limit);
 }
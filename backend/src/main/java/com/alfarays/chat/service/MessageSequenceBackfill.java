@@ -0,0 +1,94 @@
+package com.alfarays.chat.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Numbers messages stored without a sequence number, whether from before sequence numbers existed or from an
+ * older instance still running during a rolling deploy.
+ * Runs at startup once Hibernate has added the {@code seq} columns and before {@link ConversationSequencer}
+ * seeds any counter. Numbers already handed out never change, since clients have synced on them: the
+ * unnumbered rows of a conversation are numbered in {@code (created_at, id)} order after the highest number it
+ * has, together with its summary and read watermarks, which {@link ConversationSummaryBackfill} fills first.
+ * Each conversation is numbered in its own transaction holding its row lock, which serializes instances starting
+ * together and database-backed sequence allocation; with nothing left unnumbered this is a single index scan.
+ */
+@Component
+@DependsOn({"entityManagerFactory", "conversationSummaryBackfill"})
+@RequiredArgsConstructor
+@Slf4j
+public class MessageSequenceBackfill {
+
+    private static final String PENDING_CONVERSATIONS =
+            "SELECT DISTINCT conversation_id FROM _messages WHERE seq IS NULL";
+
+    private static final String LOCK_CONVERSATION =
+            "SELECT COALESCE(last_message_seq, 0) FROM _conversations WHERE id = ? FOR UPDATE";
+
+    // Read after the lock is held, so numbers another instance committed meanwhile are seen
+    private static final String MAX_SEQ =
+            "SELECT COALESCE(MAX(seq), 0) FROM _messages WHERE conversation_id = ?";
+
+    private static final String NUMBER_PENDING = """
+            UPDATE _messages m
+                JOIN (SELECT id, ROW_NUMBER() OVER (ORDER BY created_at, id) AS rn
+                      FROM _messages
+                      WHERE conversation_id = ?
+                        AND seq IS NULL) pending ON m.id = pending.id
+            SET m.seq = ? + pending.rn
+            WHERE m.seq IS NULL
+            """;
+
+    // Watermarks only ever move forward; a numbered row read before the watermark raises it
+    private static final String NUMBER_SUMMARY = """
+            UPDATE _conversations c
+            SET c.last_message_seq = (SELECT MAX(m.seq) FROM _messages m WHERE m.conversation_id = c.id),
+                c.initiator_read_up_to_seq = CASE WHEN c.initiator_read_up_to_at IS NULL THEN c.initiator_read_up_to_seq ELSE
+                    GREATEST(COALESCE(c.initiator_read_up_to_seq, 0), COALESCE(
+                        (SELECT MAX(m.seq)
+                         FROM _messages m
+                         WHERE m.conversation_id = c.id
+                           AND (m.created_at < c.initiator_read_up_to_at
+                               OR (m.created_at = c.initiator_read_up_to_at AND m.id <= c.initiator_read_up_to_id))), 0)) END,
+                c.participant_read_up_to_seq = CASE WHEN c.participant_read_up_to_at IS NULL THEN c.participant_read_up_to_seq ELSE
+                    GREATEST(COALESCE(c.participant_read_up_to_seq, 0), COALESCE(
+                        (SELECT MAX(m.seq)
+                         FROM _messages m
+                         WHERE m.conversation_id = c.id
+                           AND (m.created_at < c.participant_read_up_to_at
+                               OR (m.created_at = c.participant_read_up_to_at AND m.id <= c.participant_read_up_to_id))), 0)) END
+            WHERE c.id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void backfill() {
+        List<String> pending = jdbcTemplate.queryForList(PENDING_CONVERSATIONS, String.class);
+        if(pending.isEmpty()) return;
+
+        log.info("Numbering messages of {} conversations stored without a sequence number", pending.size());
+        for(String conversationId : pending) {
+            transactionTemplate.executeWithoutResult(status -> number(conversationId));
+        }
+    }
+
+    private void number(String conversationId) {
+        List<Long> locked = jdbcTemplate.queryForList(LOCK_CONVERSATION, Long.class, conversationId);
+        if(locked.isEmpty()) return;
+
+        Long maxSeq = jdbcTemplate.queryForObject(MAX_SEQ, Long.class, conversationId);
+        long after = Math.max(locked.get(0), maxSeq != null ? maxSeq : 0);
+        if(jdbcTemplate.update(NUMBER_PENDING, conversationId, after) == 0) return;
+
+        jdbcTemplate.update(NUMBER_SUMMARY, conversationId);
+    }
+}
@@ -2,23 +2,29 @@ package com.alfarays.chat.service;
 
 import com.alfarays.chat.entity.Conversation;
 import com.alfarays.chat.entity.Message;
+import com.alfarays.chat.model.ConversationSync;
 import com.alfarays.chat.model.MessageRequest;
 import com.alfarays.chat.model.MessageResponse;
 import com.alfarays.chat.repository.ConversationRepository;
 import com.alfarays.chat.repository.MessageRepository;
 import com.alfarays.exceptions.AuthorizationException;
+import com.alfarays.util.AfterCommit;
+import com.alfarays.util.CursorPage;
 import com.alfarays.util.GlobalResponse;
+import com.alfarays.util.SeqCursor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -27,6 +33,11 @@ public class MessageService implements IMessageService {
 
     private final MessageRepository messageRepository;
     private final ConversationRepository conversationRepository;
+    private final ConversationSummaryService conversationSummaryService;
+    private final MessageTailCache messageTailCache;
+    private final UnreadCounterStore unreadCounterStore;
+    private final ConversationSequencer conversationSequencer;
+    private final SendDeduplicator sendDeduplicator;
 
     @Override
     @Transactional(readOnly = true)
@@ -37,12 +48,74 @@ public class MessageService implements IMessageService {
         }
 
         log.debug("Fetching messages for conversation: {} by user: {}", conversationId, userId);
-        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createdAt"));
 
-        return GlobalResponse.success(messageRepository.findByConversationId(conversationId, pageable)
+        // Opening a chat asks for the newest page, which the hot tail cache can usually answer
+        if(page == 0) {
+            Optional<MessageTailCache.TailSlice> cached = messageTailCache.latest(conversationId, size);
+            if(cached.isPresent()) {
+                return GlobalResponse.success(cached.get().messages());
+            }
+        }
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.DESC, "createdAt"));
+        List<MessageResponse> messages = messageRepository.findByConversationId(conversationId, pageable)
                 .map(this::mapToResponse)
-                .getContent()
-        );
+                .getContent();
+
+        if(page == 0) {
+            messageTailCache.seed(conversationId, messages, messages.size() < size);
+        }
+
+        return GlobalResponse.success(messages);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public GlobalResponse<CursorPage<MessageResponse>> getMessageHistory(String conversationId, String userId, String before, int limit) {
+        if(conversationId == null || conversationId.isBlank()) {
+            log.warn("Invalid conversationId: {}", conversationId);
+            throw new AuthorizationException("Invalid conversationId provided");
+        }
+
+        log.debug("Fetching message history for conversation: {} by user: {} before: {}", conversationId, userId, before);
+        boolean newest = before == null || before.isBlank();
+
+        List<MessageResponse> content;
+        boolean hasMore;
+
+        Optional<MessageTailCache.TailSlice> cached = newest
+                ? messageTailCache.latest(conversationId, limit)
+                : Optional.empty();
+
+        if(cached.isPresent()) {
+            content = cached.get().messages();
+            hasMore = cached.get().hasMore();
+        } else {
+            Pageable pageable = PageRequest.of(0, limit);
+            Slice<Message> slice;
+            if(newest) {
+                slice = messageRepository.findLatestByConversationId(conversationId, pageable);
+            } else {
+                slice = messageRepository.findBeforeSeq(conversationId, SeqCursor.decode(before).seq(), pageable);
+            }
+            content = slice.map(this::mapToResponse).getContent();
+            hasMore = slice.hasNext();
+
+            if(newest) {
+                messageTailCache.seed(conversationId, content, !hasMore);
+            }
+        }
+
+        // Cached and stored pages are both newest first by seq, so the oldest seq on the page continues either one
+        Long oldestSeq = content.isEmpty() ? null : content.get(content.size() - 1).getSeq();
+        String nextCursor = hasMore && oldestSeq != null ? new SeqCursor(oldestSeq).encode() : null;
+
+        return GlobalResponse.success(CursorPage.<MessageResponse>builder()
+                .content(content)
+                .size(content.size())
+                .hasMore(hasMore)
+                .nextCursor(nextCursor)
+                .build());
     }
 
     @Override
@@ -54,31 +127,87 @@ public class MessageService implements IMessageService {
         }
 
         log.debug("Marking messages as read for conversation: {} by user: {}", conversationId, userId);
-        try {
-            messageRepository.markAsReadByConversationAndUserId(conversationId, userId);
-        } catch(Exception e) {
-            log.error("Error marking messages as read for conversation: {}", conversationId, e);
+
+        // Only the reader's watermark moves; per-message read state is derived from it
+        conversationSummaryService.onConversationRead(conversationId, userId);
+        messageTailCache.markReadAfterCommit(conversationId, userId);
+        unreadCounterStore.resetAfterCommit(conversationId, userId);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public GlobalResponse<ConversationSync> sync(String conversationId, String userId, long sinceSeq, int limit) {
+        // Taken before the query so a send that commits meanwhile is left for the next sync instead of skipped
+        long upToSeq = conversationSequencer.stableSeq(conversationId);
+
+        Conversation conversation = conversationRepository.findById(conversationId)
+                .filter(c -> userId.equals(c.getInitiator()) || userId.equals(c.getParticipant()))
+                .orElseThrow(() -> new AuthorizationException("Not a member of this conversation"));
+
+        log.debug("Syncing conversation: {} for user: {} since seq: {}", conversationId, userId, sinceSeq);
+
+        List<MessageResponse> messages;
+        boolean hasMore;
+        if(sinceSeq >= upToSeq) {
+            messages = List.of();
+            hasMore = false;
+        } else {
+            Slice<Message> slice = messageRepository.findSinceSeq(conversationId, sinceSeq, upToSeq, PageRequest.of(0, limit));
+            messages = slice.map(this::mapToResponse).getContent();
+            hasMore = slice.hasNext();
         }
+
+        String partner = conversation.partnerOf(userId);
+        return GlobalResponse.success(ConversationSync.builder()
+                .conversationId(conversationId)
+                .messages(messages)
+                .lastSeq(hasMore ? messages.get(messages.size() - 1).getSeq() : Math.max(sinceSeq, upToSeq))
+                .hasMore(hasMore)
+                .readUpToSeq(conversation.readUpToSeq(userId))
+                .partnerReadUpToSeq(conversation.readUpToSeq(partner))
+                .partnerReadAt(conversation.readAtOf(partner))
+                .unreadCount((int) unreadCounterStore.get(conversationId, userId))
+                .build());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<MessageResponse> findSent(String senderId, String clientMessageId) {
+        return messageRepository.findBySenderAndClientMessageId(senderId, clientMessageId)
+                .map(this::mapToResponse)
+                .map(response -> {
+                    sendDeduplicator.recordStoreHit();
+                    sendDeduplicator.remember(senderId, response);
+                    return response;
+                });
     }
 
     private MessageResponse mapToResponse(Message message) {
         return MessageResponse.builder()
                 .id(message.getId())
                 .conversationId(message.getConversation().getId())
+                .seq(message.getSeq())
+                .clientMessageId(message.getClientMessageId())
                 .senderId(message.getSenderId())
                 .content(message.getContent())
                 .createdAt(message.getCreatedAt())
-                .readAt(message.getReadAt())
-                .isRead(message.getIsRead())
+                .deliveredAt(message.getConversation().deliveredAt(message))
+                .readAt(message.getConversation().readAt(message))
+                .isRead(message.getConversation().isRead(message))
                 .build();
     }
 
     @Override
+    @Transactional
     public GlobalResponse<MessageResponse> send(MessageRequest request, String senderId) {
 
         if(request.message() == null || request.message().isBlank())
             throw new IllegalArgumentException("Message cannot be empty");
 
+        // A retried request gets the original message back without a second insert
+        Optional<MessageResponse> original = sendDeduplicator.recall(senderId, request.clientMessageId());
+        if(original.isPresent()) return GlobalResponse.success(original.get());
+
         // 1️⃣ Find or create conversation
         Conversation conversation = conversationRepository
                 .findById(request.conversationId())
@@ -87,18 +216,29 @@ public class MessageService implements IMessageService {
         // 2️⃣ Create message
         Message message = Message.builder()
                 .conversation(conversation)
+                .seq(conversationSequencer.next(conversation.getId()))
+                .clientMessageId(request.clientMessageId())
                 .senderId(senderId)
                 .content(request.message())
+                .createdAt(LocalDateTime.now())
                 .isRead(false)
                 .build();
 
         Message saved = messageRepository.save(message);
 
-        // 3️⃣ Update conversation metadata
-        conversation.setLastMessageAt(LocalDateTime.now());
+        // 3️⃣ Update conversation summary in the same transaction
+        conversationSummaryService.onMessageSaved(saved);
 
         // 4️⃣ Map response
-        return GlobalResponse.success(mapToResponse(saved));
+        MessageResponse response = mapToResponse(saved);
+        messageTailCache.appendAfterCommit(response);
+        sendDeduplicator.rememberAfterCommit(senderId, response);
+
+        String receiver = senderId.equals(conversation.getInitiator())
+                ? conversation.getParticipant()
+                : conversation.getInitiator();
+        AfterCommit.run(() -> unreadCounterStore.increment(conversation.getId(), receiver));
+        return GlobalResponse.success(response);
     }
 
 
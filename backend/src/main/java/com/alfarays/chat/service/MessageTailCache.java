@@ -0,0 +1,244 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.MessageResponse;
+import com.alfarays.util.AfterCommit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Bounded in-memory cache of the newest messages per active conversation.
+ * Conversations are kept in LRU order and the least recently used one is evicted once
+ * {@code application.chat.cache.max-conversations} is reached. Writes are applied only after
+ * the surrounding transaction commits so the cache never serves rolled-back messages.
+ * With {@code application.chat.state.store=database} the cache is bypassed: a tail on one instance would not see
+ * sends, reads or deliveries handled by another.
+ */
+@Component
+@Slf4j
+public class MessageTailCache {
+
+    // Conversation order is the per-conversation seq; createdAt and id only break ties for rows written before seq existed
+    private static final Comparator<MessageResponse> CONVERSATION_ORDER =
+            Comparator.comparing(MessageResponse::getSeq, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(MessageResponse::getCreatedAt)
+                    .thenComparing(MessageResponse::getId);
+
+    private final int tailSize;
+    private final boolean enabled;
+    private final Map<String, Tail> tails;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public MessageTailCache(@Value("${application.chat.cache.tail-size:200}") int tailSize,
+                            @Value("${application.chat.cache.max-conversations:2000}") int maxConversations,
+                            @Value("${application.chat.state.store:memory}") String stateStore,
+                            MeterRegistry meterRegistry) {
+        this.tailSize = tailSize;
+        this.enabled = !"database".equalsIgnoreCase(stateStore);
+        this.evictions = Counter.builder("chat.message.cache.evictions").register(meterRegistry);
+        this.tails = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tail> eldest) {
+                boolean evict = size() > maxConversations;
+                if(evict) evictions.increment();
+                return evict;
+            }
+        };
+        this.hits = Counter.builder("chat.message.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("chat.message.cache.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("chat.message.cache.conversations", this, MessageTailCache::size).register(meterRegistry);
+    }
+
+    public int tailSize() {
+        return tailSize;
+    }
+
+    /**
+     * Newest-first view of the latest {@code limit} messages, if the cached tail can answer it.
+     * On a miss a placeholder is registered so that messages committed while the caller reads the
+     * database are retained and merged by {@link #seed}.
+     */
+    public Optional<TailSlice> latest(String conversationId, int limit) {
+        // Without a placeholder nothing is ever seeded or appended
+        if(!enabled) return Optional.empty();
+
+        synchronized(tails) {
+            Tail tail = tails.get(conversationId);
+            if(tail == null) {
+                tails.put(conversationId, new Tail());
+                misses.increment();
+                return Optional.empty();
+            }
+            if(tail.seeding || (!tail.complete && tail.messages.size() < limit)) {
+                misses.increment();
+                return Optional.empty();
+            }
+
+            List<MessageResponse> result = new ArrayList<>(Math.min(limit, tail.messages.size()));
+            Iterator<MessageResponse> newestFirst = tail.messages.descendingIterator();
+            while(newestFirst.hasNext() && result.size() < limit) {
+                result.add(newestFirst.next());
+            }
+            hits.increment();
+            return Optional.of(new TailSlice(result, !tail.complete || tail.messages.size() > limit));
+        }
+    }
+
+    /**
+     * Merges a newest-first database page into the tail. {@code complete} means the page holds the
+     * whole conversation history.
+     */
+    public void seed(String conversationId, List<MessageResponse> newestFirst, boolean complete) {
+        synchronized(tails) {
+            Tail tail = tails.get(conversationId);
+            if(tail == null) return; // evicted while the caller was reading
+
+            Map<String, MessageResponse> merged = new LinkedHashMap<>();
+            for(MessageResponse message : newestFirst) {
+                merged.put(message.getId(), copy(message));
+            }
+            for(MessageResponse message : tail.messages) {
+                merged.merge(message.getId(), message, (fromDb, cached) ->
+                        Boolean.TRUE.equals(cached.getIsRead()) ? cached : fromDb);
+            }
+
+            List<MessageResponse> sorted = new ArrayList<>(merged.values());
+            sorted.sort(CONVERSATION_ORDER);
+
+            Deque<MessageResponse> messages = new ArrayDeque<>(sorted.subList(Math.max(0, sorted.size() - tailSize), sorted.size()));
+            tail.complete = complete && sorted.size() <= tailSize;
+            tail.messages = messages;
+            tail.seeding = false;
+        }
+    }
+
+    public void appendAfterCommit(MessageResponse message) {
+        MessageResponse cached = copy(message);
+        AfterCommit.run(() -> append(cached));
+    }
+
+    public void markReadAfterCommit(String conversationId, String readerId) {
+        LocalDateTime readAt = LocalDateTime.now();
+        AfterCommit.run(() -> markRead(conversationId, readerId, readAt));
+    }
+
+    public void markDeliveredAfterCommit(String conversationId, Collection<String> messageIds, LocalDateTime deliveredAt) {
+        Set<String> ids = Set.copyOf(messageIds);
+        AfterCommit.run(() -> markDelivered(conversationId, ids, deliveredAt));
+    }
+
+    public void evict(String conversationId) {
+        synchronized(tails) {
+            tails.remove(conversationId);
+        }
+    }
+
+    private void append(MessageResponse message) {
+        synchronized(tails) {
+            Tail tail = tails.get(message.getConversationId());
+            if(tail == null) return;
+
+            // Concurrent senders may commit out of order; keep the tail sorted by seq, the order clients sync on
+            Deque<MessageResponse> newer = new ArrayDeque<>();
+            while(!tail.messages.isEmpty() && CONVERSATION_ORDER.compare(tail.messages.peekLast(), message) > 0) {
+                newer.addFirst(tail.messages.pollLast());
+            }
+            tail.messages.addLast(message);
+            tail.messages.addAll(newer);
+
+            while(tail.messages.size() > tailSize) {
+                tail.messages.pollFirst();
+                tail.complete = false;
+            }
+        }
+    }
+
+    private void markRead(String conversationId, String readerId, LocalDateTime readAt) {
+        synchronized(tails) {
+            Tail tail = tails.get(conversationId);
+            if(tail == null) return;
+
+            // Cached entries are never mutated in place because callers may still be serializing them
+            Deque<MessageResponse> updated = new ArrayDeque<>(tail.messages.size());
+            for(MessageResponse message : tail.messages) {
+                if(!readerId.equals(message.getSenderId()) && !Boolean.TRUE.equals(message.getIsRead())) {
+                    MessageResponse read = copy(message);
+                    read.setIsRead(true);
+                    read.setReadAt(readAt);
+                    updated.addLast(read);
+                } else {
+                    updated.addLast(message);
+                }
+            }
+            tail.messages = updated;
+        }
+    }
+
+    private void markDelivered(String conversationId, Set<String> messageIds, LocalDateTime deliveredAt) {
+        synchronized(tails) {
+            Tail tail = tails.get(conversationId);
+            if(tail == null) return;
+
+            Deque<MessageResponse> updated = new ArrayDeque<>(tail.messages.size());
+            for(MessageResponse message : tail.messages) {
+                if(message.getDeliveredAt() == null && messageIds.contains(message.getId())) {
+                    MessageResponse delivered = copy(message);
+                    delivered.setDeliveredAt(deliveredAt);
+                    updated.addLast(delivered);
+                } else {
+                    updated.addLast(message);
+                }
+            }
+            tail.messages = updated;
+        }
+    }
+
+    private int size() {
+        synchronized(tails) {
+            return tails.size();
+        }
+    }
+
+    private static MessageResponse copy(MessageResponse message) {
+        return MessageResponse.builder()
+                .id(message.getId())
+                .conversationId(message.getConversationId())
+                .seq(message.getSeq())
+                .clientMessageId(message.getClientMessageId())
+                .senderId(message.getSenderId())
+                .content(message.getContent())
+                .createdAt(message.getCreatedAt())
+                .deliveredAt(message.getDeliveredAt())
+                .readAt(message.getReadAt())
+                .isRead(message.getIsRead())
+                .build();
+    }
+
+    public record TailSlice(List<MessageResponse> messages, boolean hasMore) {
+    }
+
+    private static final class Tail {
+        private Deque<MessageResponse> messages = new ArrayDeque<>();
+        private boolean complete;
+        private boolean seeding = true;
+    }
+}
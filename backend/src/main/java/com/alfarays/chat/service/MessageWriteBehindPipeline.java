@@ -0,0 +1,485 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.entity.Conversation;
+import com.alfarays.chat.model.ChatError;
+import com.alfarays.chat.model.MessageResponse;
+import com.alfarays.chat.repository.ConversationRepository;
+import com.alfarays.exceptions.AuthorizationException;
+import com.alfarays.shared.TimeOrderedIdGenerator;
+import com.alfarays.util.RingBuffer;
+import com.alfarays.util.WaitStrategy;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Optional staged path for STOMP sends ({@code application.chat.pipeline.enabled}).
+ * Validated messages claim a sequence in a preallocated ring of {@code ring-size} reusable slots and are
+ * written in place, so accepting a message allocates nothing beyond the message itself. Two stages
+ * consume the ring in sequence order, each on its own thread and each gated on the one before it:
+ * <ul>
+ *     <li>persist: takes every published slot (up to {@code batch-size}) and writes them with one JDBC
+ *     batch insert and one summary update per (conversation, sender) in a single transaction;</li>
+ *     <li>fan-out: for committed slots, moves the unread badges once per (conversation, receiver),
+ *     appends to the tail cache and delivers to the participants, then releases the slots.</li>
+ * </ul>
+ * Sends that cannot be written are answered with a {@link ChatError} on the sender's error queue, as on the
+ * synchronous path; a failed batch is retried one message at a time, each keeping its sequence number.
+ * Batches form naturally from whatever arrived while the previous batch was being written. How an idle
+ * stage waits is set by {@code wait-strategy} ({@code blocking}, {@code sleeping}, {@code yielding} or
+ * {@code busy-spin}).
+ */
+@Component
+@Slf4j
+public class MessageWriteBehindPipeline {
+
+    private static final String INSERT_MESSAGE =
+            "INSERT INTO _messages (id, conversation_id, seq, client_message_id, sender_id, content, created_at, is_read) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Same wording as the synchronous path, whose rejections reach the sender through the lane's error handler
+    private static final String NO_CONVERSATION = "No conversation exists";
+    private static final String NOT_SENT = "The request could not be processed. Please try again.";
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long submitTimeoutMillis;
+    private final WaitStrategy waitStrategy;
+    private final RingBuffer<MessageSlot> ring;
+    private final AtomicLong persisted = new AtomicLong(-1);
+    private final AtomicLong fannedOut = new AtomicLong(-1);
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ConversationRepository conversationRepository;
+    private final ConversationSummaryService conversationSummaryService;
+    private final ConversationSequencer conversationSequencer;
+    private final MessageTailCache messageTailCache;
+    private final SendDeduplicator sendDeduplicator;
+    private final UnreadCounterStore unreadCounterStore;
+    private final WebSocketService webSocketService;
+
+    private final DistributionSummary batchSizes;
+    private final Timer persistLatency;
+    private final Timer fanOutLatency;
+    private final Timer commitLatency;
+
+    private volatile boolean running;
+    private volatile boolean persisterDone;
+    private Thread persister;
+    private Thread fanOut;
+
+    public MessageWriteBehindPipeline(@Value("${application.chat.pipeline.enabled:false}") boolean enabled,
+                                      @Value("${application.chat.pipeline.ring-size:16384}") int ringSize,
+                                      @Value("${application.chat.pipeline.batch-size:256}") int batchSize,
+                                      @Value("${application.chat.pipeline.wait-strategy:blocking}") String waitStrategy,
+                                      @Value("${application.chat.pipeline.submit-timeout-ms:500}") long submitTimeoutMillis,
+                                      JdbcTemplate jdbcTemplate,
+                                      TransactionTemplate transactionTemplate,
+                                      ConversationRepository conversationRepository,
+                                      ConversationSummaryService conversationSummaryService,
+                                      ConversationSequencer conversationSequencer,
+                                      MessageTailCache messageTailCache,
+                                      SendDeduplicator sendDeduplicator,
+                                      UnreadCounterStore unreadCounterStore,
+                                      WebSocketService webSocketService,
+                                      MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.submitTimeoutMillis = submitTimeoutMillis;
+        this.waitStrategy = WaitStrategy.named(waitStrategy);
+        this.ring = new RingBuffer<>(ringSize, MessageSlot::new, this.waitStrategy);
+        this.ring.setGatingSequence(fannedOut);
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.conversationRepository = conversationRepository;
+        this.conversationSummaryService = conversationSummaryService;
+        this.conversationSequencer = conversationSequencer;
+        this.messageTailCache = messageTailCache;
+        this.sendDeduplicator = sendDeduplicator;
+        this.unreadCounterStore = unreadCounterStore;
+        this.webSocketService = webSocketService;
+
+        this.batchSizes = DistributionSummary.builder("chat.pipeline.batch.size").register(meterRegistry);
+        this.persistLatency = Timer.builder("chat.pipeline.stage.latency")
+                .tag("stage", "persist")
+                .description("Time a pipeline stage spends on one batch")
+                .register(meterRegistry);
+        this.fanOutLatency = Timer.builder("chat.pipeline.stage.latency")
+                .tag("stage", "fanout")
+                .description("Time a pipeline stage spends on one batch")
+                .register(meterRegistry);
+        this.commitLatency = Timer.builder("chat.pipeline.commit.latency")
+                .description("Time from accepting a message to its batch commit")
+                .register(meterRegistry);
+        Gauge.builder("chat.pipeline.stage.lag", this, pipeline -> pipeline.ring.cursor().get() - pipeline.persisted.get())
+                .tag("stage", "persist")
+                .description("Slots published but not yet processed by a pipeline stage")
+                .register(meterRegistry);
+        Gauge.builder("chat.pipeline.stage.lag", this, pipeline -> pipeline.persisted.get() - pipeline.fannedOut.get())
+                .tag("stage", "fanout")
+                .description("Slots published but not yet processed by a pipeline stage")
+                .register(meterRegistry);
+        Gauge.builder("chat.pipeline.ring.remaining", ring, buffer -> buffer.capacity() - buffer.backlog())
+                .description("Free slots left in the message ring")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if(!enabled) return;
+
+        running = true;
+        persister = stage(this::persistLoop, "message-pipeline-persist");
+        fanOut = stage(this::fanOutLoop, "message-pipeline-fanout");
+        log.info("Message pipeline started (ringSize={}, batchSize={}, waitStrategy={})",
+                ring.capacity(), batchSize, waitStrategy.getClass().getSimpleName());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if(persister == null) return;
+
+        running = false;
+        waitStrategy.signalAllWhenBlocking();
+        persister.join(TimeUnit.SECONDS.toMillis(10));
+        fanOut.join(TimeUnit.SECONDS.toMillis(10));
+        log.info("Message pipeline stopped, {} messages left unprocessed", ring.backlog());
+    }
+
+    /**
+     * Accepts a message into the ring, waiting up to {@code submit-timeout-ms} for a free slot when it is full.
+     * Returns {@code false} if the ring stayed full or the pipeline is stopping; the caller must then reject the
+     * send, since writing it any other way would commit it ahead of messages still in the ring. A retry of a
+     * send that is still in the ring is accepted without a second slot; the original's fan-out answers the sender.
+     */
+    public boolean submit(String conversationId, String sender, String content, String clientMessageId) {
+        if(!running) return false;
+
+        String retryKey = retryKey(sender, clientMessageId);
+        if(retryKey != null && !inFlight.add(retryKey)) return true;
+
+        long sequence = ring.next(submitTimeoutMillis, TimeUnit.MILLISECONDS);
+        if(sequence < 0) {
+            if(retryKey != null) inFlight.remove(retryKey);
+            return false;
+        }
+
+        MessageSlot slot = ring.get(sequence);
+        slot.conversationId = conversationId;
+        slot.sender = sender;
+        slot.content = content;
+        slot.clientMessageId = clientMessageId;
+        slot.createdAt = LocalDateTime.now();
+        slot.acceptedAt = System.nanoTime();
+        ring.publish(sequence);
+        return true;
+    }
+
+    private Thread stage(Runnable loop, String name) {
+        Thread thread = new Thread(loop, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private boolean isRunning() {
+        return running;
+    }
+
+    private void persistLoop() {
+        long next = persisted.get() + 1;
+        while(true) {
+            long claimed = waitStrategy.waitFor(next, ring.cursor(), this::isRunning);
+            long last = claimed < next ? next - 1 : ring.highestPublished(next, Math.min(claimed, next + batchSize - 1));
+
+            if(last < next) {
+                // Stop only once every slot claimed before shutdown has been written
+                if(!running && ring.cursor().get() < next) break;
+                // Claimed but not yet published: wait the way the configured strategy waits rather than spin a core
+                long claimedSlot = next;
+                waitStrategy.waitUntil(() -> ring.highestPublished(claimedSlot, claimedSlot) >= claimedSlot, this::isRunning);
+                continue;
+            }
+
+            persist(next, last);
+            persisted.set(last);
+            waitStrategy.signalAllWhenBlocking();
+            next = last + 1;
+        }
+        persisterDone = true;
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    private void fanOutLoop() {
+        long next = fannedOut.get() + 1;
+        while(true) {
+            long last = waitStrategy.waitFor(next, persisted, () -> !persisterDone);
+            if(last < next) {
+                if(persisterDone && persisted.get() < next) break;
+                continue;
+            }
+
+            fanOut(next, last);
+            fannedOut.set(last);
+            next = last + 1;
+        }
+    }
+
+    private void persist(long from, long to) {
+        long started = System.nanoTime();
+        batchSizes.record(to - from + 1);
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(from, to));
+            long committed = System.nanoTime();
+            for(long sequence = from; sequence <= to; sequence++) {
+                MessageSlot slot = ring.get(sequence);
+                if(slot.outcome == null) {
+                    slot.outcome = Outcome.PERSISTED;
+                    slot.persistedAt = committed;
+                }
+            }
+        } catch(Exception e) {
+            log.error("Batch of {} messages failed, retrying one by one", to - from + 1, e);
+            for(long sequence = from; sequence <= to; sequence++) {
+                MessageSlot slot = ring.get(sequence);
+                if(slot.outcome == null) slot.outcome = Outcome.FAILED;
+            }
+        }
+
+        persistLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private void write(long from, long to) {
+        Set<String> conversationIds = new HashSet<>();
+        for(long sequence = from; sequence <= to; sequence++) {
+            conversationIds.add(ring.get(sequence).conversationId);
+        }
+        Map<String, Conversation> conversations = conversationRepository.findAllById(conversationIds)
+                .stream()
+                .collect(Collectors.toMap(Conversation::getId, Function.identity()));
+
+        int[] rows = new int[(int) (to - from + 1)];
+        int accepted = 0;
+        for(long sequence = from; sequence <= to; sequence++) {
+            MessageSlot slot = ring.get(sequence);
+            Conversation conversation = conversations.get(slot.conversationId);
+            if(conversation == null
+                    || !slot.sender.equals(conversation.getInitiator()) && !slot.sender.equals(conversation.getParticipant())) {
+                log.warn("Dropping message from {} to unknown or foreign conversation {}", slot.sender, slot.conversationId);
+                slot.outcome = Outcome.DROPPED;
+                continue;
+            }
+
+            // Ids are handed out in ring order so they sort the same way the messages arrived
+            slot.id = TimeOrderedIdGenerator.nextId();
+            slot.receiver = conversation.partnerOf(slot.sender);
+            rows[accepted++] = (int) (sequence - from);
+        }
+
+        if(accepted == 0) return;
+
+        // Numbered one conversation at a time in id order, so instances whose batches overlap lock conversation
+        // rows in the same order; the sort is stable, so numbers within a conversation still follow the ring
+        Integer[] numbering = new Integer[accepted];
+        for(int i = 0; i < accepted; i++) numbering[i] = rows[i];
+        Arrays.sort(numbering, Comparator.comparing(row -> ring.get(from + row).conversationId));
+        for(int row : numbering) {
+            MessageSlot slot = ring.get(from + row);
+            slot.seq = conversationSequencer.next(slot.conversationId);
+        }
+
+        int batch = accepted;
+        jdbcTemplate.batchUpdate(INSERT_MESSAGE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                MessageSlot slot = ring.get(from + rows[i]);
+                ps.setString(1, slot.id);
+                ps.setString(2, slot.conversationId);
+                ps.setLong(3, slot.seq);
+                ps.setString(4, slot.clientMessageId);
+                ps.setString(5, slot.sender);
+                ps.setString(6, slot.content);
+                ps.setTimestamp(7, Timestamp.valueOf(slot.createdAt));
+                ps.setBoolean(8, false);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch;
+            }
+        });
+
+        // One summary UPDATE per (conversation, sender) instead of one per message
+        Map<String, SenderGroup> bySenderAndConversation = new LinkedHashMap<>();
+        for(int i = 0; i < batch; i++) {
+            MessageSlot slot = ring.get(from + rows[i]);
+            SenderGroup group = bySenderAndConversation.computeIfAbsent(slot.conversationId + '\n' + slot.sender, key -> new SenderGroup());
+            group.newest = slot;
+            group.count++;
+        }
+        for(SenderGroup group : bySenderAndConversation.values()) {
+            MessageSlot newest = group.newest;
+            conversationSummaryService.onMessagesSaved(newest.conversationId, newest.sender, newest.id,
+                    newest.content, newest.createdAt, newest.seq, group.count);
+        }
+    }
+
+    private void fanOut(long from, long to) {
+        long started = System.nanoTime();
+
+        // Badges move once per (conversation, receiver) for the whole batch
+        Map<String, Integer> received = new LinkedHashMap<>();
+        for(long sequence = from; sequence <= to; sequence++) {
+            MessageSlot slot = ring.get(sequence);
+            if(slot.outcome == Outcome.PERSISTED) {
+                received.merge(slot.conversationId + '\n' + slot.receiver, 1, Integer::sum);
+            }
+        }
+        Map<String, Long> unreadCounts = new HashMap<>();
+        received.forEach((key, count) -> {
+            int split = key.indexOf('\n');
+            try {
+                unreadCounts.put(key, unreadCounterStore.add(key.substring(0, split), key.substring(split + 1), count));
+            } catch(Exception e) {
+                log.error("Failed to move unread badge for conversation {}", key.substring(0, split), e);
+            }
+        });
+
+        for(long sequence = from; sequence <= to; sequence++) {
+            MessageSlot slot = ring.get(sequence);
+            try {
+                if(slot.outcome == Outcome.PERSISTED) {
+                    commitLatency.record(slot.persistedAt - slot.acceptedAt, TimeUnit.NANOSECONDS);
+                    MessageResponse response = MessageResponse.builder()
+                            .id(slot.id)
+                            .conversationId(slot.conversationId)
+                            .seq(slot.seq)
+                            .clientMessageId(slot.clientMessageId)
+                            .senderId(slot.sender)
+                            .content(slot.content)
+                            .createdAt(slot.createdAt)
+                            .isRead(false)
+                            .build();
+                    messageTailCache.appendAfterCommit(response);
+                    sendDeduplicator.remember(slot.sender, response);
+                    Long unreadCount = unreadCounts.get(slot.conversationId + '\n' + slot.receiver);
+                    webSocketService.deliverPrivateMessage(response, slot.receiver, unreadCount == null ? 0 : unreadCount);
+                } else if(slot.outcome == Outcome.DROPPED) {
+                    reject(slot, NO_CONVERSATION);
+                } else if(slot.outcome == Outcome.FAILED) {
+                    retry(slot);
+                }
+            } catch(Exception e) {
+                log.error("Dropping message from {} to conversation {}", slot.sender, slot.conversationId, e);
+                reject(slot, e instanceof AuthorizationException ? e.getMessage() : NOT_SENT);
+            } finally {
+                // Released only after remember(), so a later retry is answered from the deduplicator
+                String retryKey = retryKey(slot.sender, slot.clientMessageId);
+                if(retryKey != null) inFlight.remove(retryKey);
+                slot.clear();
+            }
+        }
+
+        fanOutLatency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+
+    private void retry(MessageSlot slot) {
+        try {
+            // A slot that failed before it was numbered has seq 0 and is numbered afresh
+            webSocketService.resendPrivateMessage(slot.conversationId, slot.sender, slot.content, slot.clientMessageId, slot.seq);
+        } catch(DataIntegrityViolationException e) {
+            // Two copies of a retried send landed in one batch; the first is already stored
+            if(slot.clientMessageId == null || !webSocketService.replayFromStore(slot.sender, slot.clientMessageId)) throw e;
+        }
+    }
+
+    private void reject(MessageSlot slot, String reason) {
+        try {
+            webSocketService.sendError(slot.sender, ChatError.builder()
+                    .conversationId(slot.conversationId)
+                    .clientMessageId(slot.clientMessageId)
+                    .message(reason)
+                    .timestamp(LocalDateTime.now().toString())
+                    .build());
+        } catch(Exception e) {
+            log.warn("Could not tell {} that their message was not sent", slot.sender, e);
+        }
+    }
+
+    private static String retryKey(String sender, String clientMessageId) {
+        return clientMessageId == null ? null : sender + '\n' + clientMessageId;
+    }
+
+    private enum Outcome {
+        PERSISTED, DROPPED, FAILED
+    }
+
+    /**
+     * Reusable ring entry. Written by the producer before publish, completed by the persist stage and
+     * cleared by the fan-out stage; the ring's sequences order every hand-off between them.
+     */
+    private static final class MessageSlot {
+        private String conversationId;
+        private String sender;
+        private String content;
+        private String clientMessageId;
+        private LocalDateTime createdAt;
+        private long acceptedAt;
+
+        private String id;
+        private long seq;
+        private String receiver;
+        private long persistedAt;
+        private Outcome outcome;
+
+        private void clear() {
+            conversationId = null;
+            sender = null;
+            content = null;
+            clientMessageId = null;
+            createdAt = null;
+            id = null;
+            seq = 0;
+            receiver = null;
+            outcome = null;
+        }
+    }
+
+    private static final class SenderGroup {
+        private MessageSlot newest;
+        private int count;
+    }
+}
@@ -0,0 +1,193 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.AffinityHint;
+import com.alfarays.user.service.PresenceRegistry;
+import com.alfarays.user.service.UserCardService;
+import com.alfarays.util.ConsistentHashRing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which live node owns a STOMP session, by consistent hashing of its route key over the nodes of the
+ * {@link PresenceRegistry}. A client connecting for a conversation routes by the conversation, so both
+ * participants of an active chat are sent to the same node; otherwise it routes by the user.
+ * When membership changes, sessions whose owner moved are told to reconnect, spread over
+ * {@code application.chat.affinity.rebalance-max-delay-ms} so the new owner is not hit all at once.
+ * A draining node is left out of the ring and {@link #evacuate moves} every session it holds. Hints are addressed
+ * to the session, not the user, so a user's sessions on other nodes are left where they are.
+ */
+@Component
+@Slf4j
+public class NodeAffinity {
+
+    public static final String ROUTE_ATTRIBUTE = "chat.route";
+
+    private final PresenceRegistry registry;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final int virtualNodes;
+    private final long rebalanceMaxDelayMillis;
+
+    // Route key and user of every session on this node
+    private final ConcurrentHashMap<String, Route> sessions = new ConcurrentHashMap<>();
+
+    private volatile ConsistentHashRing ring;
+    private volatile Map<String, String> addresses;
+
+    private final Counter rebalanced;
+
+    public NodeAffinity(@Value("${application.chat.affinity.virtual-nodes:128}") int virtualNodes,
+                        @Value("${application.chat.affinity.rebalance-max-delay-ms:30000}") long rebalanceMaxDelayMillis,
+                        PresenceRegistry registry,
+                        SimpMessagingTemplate messagingTemplate,
+                        MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.messagingTemplate = messagingTemplate;
+        this.virtualNodes = virtualNodes;
+        this.rebalanceMaxDelayMillis = rebalanceMaxDelayMillis;
+        this.addresses = Map.of(registry.nodeId(), "");
+        this.ring = new ConsistentHashRing(addresses.keySet(), virtualNodes);
+
+        Gauge.builder("chat.affinity.nodes", this, affinity -> affinity.ring.nodes().size())
+                .description("Live nodes on the affinity ring")
+                .register(meterRegistry);
+        this.rebalanced = Counter.builder("chat.affinity.rebalanced")
+                .description("Sessions told to reconnect to the node that now owns their route")
+                .register(meterRegistry);
+    }
+
+    public static String conversationRoute(String conversationId) {
+        return "conversation:" + conversationId;
+    }
+
+    public static String userRoute(String userId) {
+        return "user:" + UserCardService.key(userId);
+    }
+
+    public String ownerOf(String routeKey) {
+        String owner = ring.ownerOf(routeKey);
+        return owner != null ? owner : registry.nodeId();
+    }
+
+    public boolean isLocal(String routeKey) {
+        return registry.nodeId().equals(ownerOf(routeKey));
+    }
+
+    public String nodeId() {
+        return registry.nodeId();
+    }
+
+    public AffinityHint hint(String routeKey) {
+        String owner = ownerOf(routeKey);
+        return AffinityHint.builder()
+                .reason(AffinityHint.OWNER)
+                .node(owner)
+                .url(addresses.getOrDefault(owner, ""))
+                .local(owner.equals(registry.nodeId()))
+                .build();
+    }
+
+    public void register(String sessionId, String userId, String routeKey) {
+        if(sessionId == null) return;
+        sessions.put(sessionId, new Route(userId, routeKey != null ? routeKey : userRoute(userId)));
+    }
+
+    public void unregister(String sessionId) {
+        if(sessionId != null) sessions.remove(sessionId);
+    }
+
+    public int localSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Tells every session here to reconnect to the owner of its route, each after a random delay of up to
+     * {@code maxDelayMillis}. Returns the number of users told.
+     */
+    public int evacuate(String reason, long maxDelayMillis) {
+        Map<String, Route> all = Map.copyOf(sessions);
+        hint(all, reason, maxDelayMillis);
+        return (int) all.values().stream().map(Route::userId).distinct().count();
+    }
+
+    @Scheduled(fixedDelayString = "${application.chat.affinity.refresh-ms:5000}")
+    public void refresh() {
+        Map<String, String> live;
+        try {
+            live = registry.liveNodes();
+        } catch(Exception e) {
+            log.warn("Reading live nodes failed, keeping the current affinity ring", e);
+            return;
+        }
+
+        addresses = Map.copyOf(live);
+        if(live.keySet().equals(ring.nodes())) return;
+
+        ConsistentHashRing previous = ring;
+        ring = new ConsistentHashRing(live.keySet(), virtualNodes);
+        log.info("Affinity ring changed from {} to {} nodes", previous.nodes().size(), live.size());
+        rebalance(previous);
+    }
+
+    /**
+     * Hints every session whose route this node owned and no longer does. Sessions that were already on the
+     * wrong node are left alone; they were placed by a client that did not follow hints.
+     */
+    private void rebalance(ConsistentHashRing previous) {
+        String self = registry.nodeId();
+        // Leaving the ring: the drain moves every session, not just the ones whose owner changed
+        if(!ring.nodes().contains(self)) return;
+
+        Map<String, Route> moved = new HashMap<>();
+        sessions.forEach((sessionId, route) -> {
+            if(self.equals(previous.ownerOf(route.key())) && !self.equals(ownerOf(route.key()))) {
+                moved.put(sessionId, route);
+            }
+        });
+        if(moved.isEmpty()) return;
+
+        hint(moved, AffinityHint.REBALANCE, rebalanceMaxDelayMillis);
+        rebalanced.increment(moved.size());
+        log.info("Asked {} sessions to reconnect to their new owner", moved.size());
+    }
+
+    private void hint(Map<String, Route> routeBySession, String reason, long maxDelayMillis) {
+        String self = registry.nodeId();
+        routeBySession.forEach((sessionId, route) -> {
+            String owner = ownerOf(route.key());
+            messagingTemplate.convertAndSendToUser(route.userId(), "/queue/reconnect",
+                    AffinityHint.builder()
+                            .reason(reason)
+                            .node(owner)
+                            .url(addresses.getOrDefault(owner, ""))
+                            .local(self.equals(owner))
+                            .delayMs(ThreadLocalRandom.current().nextLong(maxDelayMillis + 1))
+                            .build(),
+                    sessionHeaders(sessionId));
+        });
+    }
+
+    // With a session id the user destination resolves to that one session only
+    private static MessageHeaders sessionHeaders(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        return accessor.getMessageHeaders();
+    }
+
+    private record Route(String userId, String key) {
+    }
+}
@@ -0,0 +1,123 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.util.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces mark-read requests per (conversation, reader).
+ * The first request is applied immediately and opens a window of {@code application.chat.read.coalesce-ms};
+ * any further requests inside it collapse into a single trailing apply when the window closes. A request
+ * is skipped outright when the reader's unread counter is already zero; with a database state store that
+ * counter is the conversation row, so a send handled by another instance is never skipped over.
+ */
+@Component
+@Slf4j
+public class ReadReceiptCoalescer {
+
+    private final WebSocketService webSocketService;
+    private final ConversationDispatcher conversationDispatcher;
+    private final UnreadCounterStore unreadCounterStore;
+    private final HashedTimingWheel windows;
+    private final long windowMillis;
+    private final ConcurrentHashMap<Key, Window> open = new ConcurrentHashMap<>();
+
+    private final Counter applied;
+    private final Counter coalesced;
+    private final Counter skipped;
+
+    public ReadReceiptCoalescer(@Value("${application.chat.read.coalesce-ms:1000}") long windowMillis,
+                                @Value("${application.chat.read.timer-tick-ms:100}") long timerTickMillis,
+                                @Qualifier("applicationTaskExecutor") Executor executor,
+                                WebSocketService webSocketService,
+                                ConversationDispatcher conversationDispatcher,
+                                UnreadCounterStore unreadCounterStore,
+                                MeterRegistry meterRegistry) {
+        this.webSocketService = webSocketService;
+        this.conversationDispatcher = conversationDispatcher;
+        this.unreadCounterStore = unreadCounterStore;
+        this.windowMillis = windowMillis;
+        this.windows = new HashedTimingWheel("read-receipt-timer", timerTickMillis, 256, executor);
+
+        this.applied = requests(meterRegistry, "applied");
+        this.coalesced = requests(meterRegistry, "coalesced");
+        this.skipped = requests(meterRegistry, "skipped");
+    }
+
+    public void request(String conversationId, String readerId) {
+        Key key = new Key(conversationId, readerId);
+        boolean[] leading = new boolean[1];
+
+        open.compute(key, (k, window) -> {
+            if(window != null) {
+                window.dirty = true;
+                return window;
+            }
+            leading[0] = true;
+            Window opened = new Window();
+            // The trailing apply runs on the conversation's lane, in order with the sends around it
+            windows.schedule(() -> conversationDispatcher.dispatch(k.conversationId(), () -> close(k, opened)),
+                    windowMillis, TimeUnit.MILLISECONDS);
+            return opened;
+        });
+
+        if(leading[0]) {
+            apply(key);
+        } else {
+            coalesced.increment();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        windows.close();
+    }
+
+    private void close(Key key, Window window) {
+        boolean[] trailing = new boolean[1];
+        open.computeIfPresent(key, (k, current) -> {
+            if(current != window) return current;
+            trailing[0] = current.dirty;
+            return null;
+        });
+
+        if(trailing[0]) apply(key);
+    }
+
+    private void apply(Key key) {
+        if(unreadCounterStore.get(key.conversationId(), key.readerId()) == 0) {
+            skipped.increment();
+            return;
+        }
+
+        try {
+            webSocketService.markConversationAsRead(key.conversationId(), key.readerId());
+            applied.increment();
+        } catch(Exception e) {
+            log.error("Failed to mark conversation {} as read for {}", key.conversationId(), key.readerId(), e);
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("chat.read.requests")
+                .tag("result", result)
+                .description("Mark-read requests by outcome")
+                .register(meterRegistry);
+    }
+
+    private record Key(String conversationId, String readerId) {
+    }
+
+    private static final class Window {
+        private volatile boolean dirty;
+    }
+}
@@ -0,0 +1,111 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.MessageResponse;
+import com.alfarays.util.AfterCommit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the last {@code application.chat.dedup.per-sender} committed sends of each sender by client message id,
+ * for at most {@code window-ms}, so a retried send can be answered with the original message instead of being
+ * written and fanned out again. Anything older falls through to the unique (sender_id, client_message_id) key.
+ */
+@Component
+public class SendDeduplicator {
+
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final int perSender;
+    private final long windowMillis;
+
+    private final Counter duplicates;
+
+    public SendDeduplicator(@Value("${application.chat.dedup.per-sender:256}") int perSender,
+                            @Value("${application.chat.dedup.window-ms:600000}") long windowMillis,
+                            MeterRegistry meterRegistry) {
+        this.perSender = perSender;
+        this.windowMillis = windowMillis;
+
+        this.duplicates = Counter.builder("chat.send.duplicates")
+                .description("Retried sends answered with the original message")
+                .register(meterRegistry);
+        Gauge.builder("chat.dedup.senders", windows, Map::size)
+                .description("Senders with a dedup window in memory")
+                .register(meterRegistry);
+    }
+
+    public Optional<MessageResponse> recall(String senderId, String clientMessageId) {
+        if(clientMessageId == null) return Optional.empty();
+
+        Window window = windows.get(senderId);
+        if(window == null) return Optional.empty();
+
+        MessageResponse original = window.get(clientMessageId, System.currentTimeMillis() - windowMillis);
+        if(original != null) duplicates.increment();
+        return Optional.ofNullable(original);
+    }
+
+    public void remember(String senderId, MessageResponse response) {
+        if(response.getClientMessageId() == null) return;
+        windows.computeIfAbsent(senderId, k -> new Window(perSender)).put(response.getClientMessageId(), response);
+    }
+
+    public void rememberAfterCommit(String senderId, MessageResponse response) {
+        if(response.getClientMessageId() == null) return;
+        AfterCommit.run(() -> remember(senderId, response));
+    }
+
+    /**
+     * Counts a duplicate that slipped past the window and was caught by the unique key instead.
+     */
+    public void recordStoreHit() {
+        duplicates.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${application.chat.dedup.evict-interval-ms:60000}")
+    public void evictExpired() {
+        long cutoff = System.currentTimeMillis() - windowMillis;
+        windows.entrySet().removeIf(entry -> entry.getValue().expireBefore(cutoff));
+    }
+
+    private record Remembered(MessageResponse response, long at) {
+    }
+
+    private static final class Window {
+        private final LinkedHashMap<String, Remembered> sent;
+
+        private Window(int capacity) {
+            this.sent = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Remembered> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized MessageResponse get(String clientMessageId, long cutoff) {
+            Remembered remembered = sent.get(clientMessageId);
+            return remembered != null && remembered.at() >= cutoff ? remembered.response() : null;
+        }
+
+        private synchronized void put(String clientMessageId, MessageResponse response) {
+            sent.put(clientMessageId, new Remembered(response, System.currentTimeMillis()));
+        }
+
+        /**
+         * Drops expired entries and reports whether the window is now empty.
+         */
+        private synchronized boolean expireBefore(long cutoff) {
+            sent.values().removeIf(remembered -> remembered.at() < cutoff);
+            return sent.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.TypingNotification;
+import com.alfarays.util.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces typing events per (conversation, user).
+ * A "typing" frame is published at most once per {@code application.chat.typing.interval-ms}, and a
+ * "stopped" frame is generated by the server once no event has arrived for {@code stop-after-ms}.
+ * Repeated "stopped" events from the client are dropped. Nothing here touches the database.
+ */
+@Component
+@Slf4j
+public class TypingThrottler {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final HashedTimingWheel stopTimers;
+    private final long intervalNanos;
+    private final long stopAfterNanos;
+    private final ConcurrentHashMap<Key, TypingState> states = new ConcurrentHashMap<>();
+
+    private final Counter received;
+    private final Counter published;
+
+    public TypingThrottler(@Value("${application.chat.typing.interval-ms:2000}") long intervalMillis,
+                           @Value("${application.chat.typing.stop-after-ms:5000}") long stopAfterMillis,
+                           @Value("${application.chat.typing.timer-tick-ms:100}") long timerTickMillis,
+                           @Qualifier("applicationTaskExecutor") Executor executor,
+                           SimpMessagingTemplate messagingTemplate,
+                           MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.stopAfterNanos = TimeUnit.MILLISECONDS.toNanos(stopAfterMillis);
+        this.stopTimers = new HashedTimingWheel("typing-stop-timer", timerTickMillis, 256, executor);
+
+        this.received = Counter.builder("chat.typing.events")
+                .tag("result", "received")
+                .description("Typing events received from clients and frames published to the broker")
+                .register(meterRegistry);
+        this.published = Counter.builder("chat.typing.events")
+                .tag("result", "published")
+                .description("Typing events received from clients and frames published to the broker")
+                .register(meterRegistry);
+    }
+
+    public void onTyping(String conversationId, String userId, boolean isTyping) {
+        received.increment();
+        Key key = new Key(conversationId, userId);
+
+        if(!isTyping) {
+            TypingState state = states.remove(key);
+            if(state != null) {
+                state.stopTimer.cancel();
+                publish(key, false);
+            }
+            return;
+        }
+
+        long now = System.nanoTime();
+        boolean[] publish = new boolean[1];
+        states.compute(key, (k, state) -> {
+            if(state == null) {
+                TypingState started = new TypingState(now);
+                started.stopTimer = scheduleStop(k, started, stopAfterNanos);
+                publish[0] = true;
+                return started;
+            }
+
+            state.lastActivity = now;
+            if(now - state.lastPublished >= intervalNanos) {
+                state.lastPublished = now;
+                publish[0] = true;
+            }
+            return state;
+        });
+
+        if(publish[0]) publish(key, true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopTimers.close();
+    }
+
+    private HashedTimingWheel.Timeout scheduleStop(Key key, TypingState state, long delayNanos) {
+        return stopTimers.schedule(() -> expire(key, state), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void expire(Key key, TypingState expected) {
+        long now = System.nanoTime();
+        boolean[] stopped = new boolean[1];
+        states.computeIfPresent(key, (k, state) -> {
+            if(state != expected) return state;
+
+            // Still typing: wait out the rest of the window instead of rescheduling on every keystroke
+            long idle = now - state.lastActivity;
+            if(idle < stopAfterNanos) {
+                state.stopTimer = scheduleStop(k, state, stopAfterNanos - idle);
+                return state;
+            }
+            stopped[0] = true;
+            return null;
+        });
+
+        if(stopped[0]) publish(key, false);
+    }
+
+    private void publish(Key key, boolean isTyping) {
+        published.increment();
+        messagingTemplate.convertAndSend(
+                "/topic/conversation/" + key.conversationId() + "/typing",
+                new TypingNotification(
+                        key.userId(),
+                        isTyping,
+                        LocalDateTime.now().toString()
+                )
+        );
+    }
+
+    private record Key(String conversationId, String userId) {
+    }
+
+    private static final class TypingState {
+        private long lastPublished;
+        private long lastActivity;
+        private HashedTimingWheel.Timeout stopTimer;
+
+        private TypingState(long now) {
+            this.lastPublished = now;
+            this.lastActivity = now;
+        }
+    }
+}
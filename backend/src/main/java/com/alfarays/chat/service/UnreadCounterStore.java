@@ -0,0 +1,222 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.entity.Conversation;
+import com.alfarays.chat.repository.ConversationRepository;
+import com.alfarays.util.AfterCommit;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory unread badge counters per (conversation, reader).
+ * Counters are seeded lazily from the denormalized unread columns on the conversation row, moved by
+ * committed sends and reads, and periodically reconciled against the row so a missed update cannot
+ * drift forever. Each counter has its own monitor, so contention is limited to a single conversation
+ * side; no database I/O ever happens while a monitor or map bin is held.
+ * <p>
+ * With {@code application.chat.state.store=database}, for several instances, nothing is held in memory: every
+ * read goes to the row, which sends and reads on any instance keep current in their own transactions.
+ */
+@Component
+@Slf4j
+public class UnreadCounterStore {
+
+    private static final int MAX_SEED_ATTEMPTS = 3;
+    private static final int RECONCILE_CHUNK = 500;
+
+    private final ConversationRepository conversationRepository;
+    private final ConcurrentHashMap<Key, UnreadCounter> counters = new ConcurrentHashMap<>();
+    private final long idleMillis;
+    private final int maxEntries;
+    private final boolean databaseBacked;
+
+    public UnreadCounterStore(@Value("${application.chat.unread.idle-ms:900000}") long idleMillis,
+                              @Value("${application.chat.unread.max-entries:50000}") int maxEntries,
+                              @Value("${application.chat.state.store:memory}") String stateStore,
+                              ConversationRepository conversationRepository,
+                              MeterRegistry meterRegistry) {
+        this.idleMillis = idleMillis;
+        this.maxEntries = maxEntries;
+        this.databaseBacked = "database".equalsIgnoreCase(stateStore);
+        this.conversationRepository = conversationRepository;
+
+        Gauge.builder("chat.unread.counters", counters, Map::size)
+                .description("Unread counters currently held in memory")
+                .register(meterRegistry);
+    }
+
+    public long get(String conversationId, String readerId) {
+        Key key = new Key(conversationId, readerId);
+        if(databaseBacked) return load(key);
+
+        UnreadCounter counter = counters.computeIfAbsent(key, k -> new UnreadCounter());
+        long value = counter.valueIfSeeded();
+        return value >= 0 ? value : seed(key, counter);
+    }
+
+    /**
+     * Adds {@code delta} committed messages to the reader's badge and returns the new value.
+     * Must be called after the messages are committed: an unseeded counter is loaded from the
+     * row, which then already includes them.
+     */
+    public long add(String conversationId, String readerId, int delta) {
+        Key key = new Key(conversationId, readerId);
+        if(databaseBacked) return load(key);
+
+        UnreadCounter counter = counters.computeIfAbsent(key, k -> new UnreadCounter());
+        long value = counter.addIfSeeded(delta);
+        return value >= 0 ? value : seed(key, counter);
+    }
+
+    public long increment(String conversationId, String readerId) {
+        return add(conversationId, readerId, 1);
+    }
+
+    public void reset(String conversationId, String readerId) {
+        if(databaseBacked) return;
+        counters.computeIfAbsent(new Key(conversationId, readerId), k -> new UnreadCounter()).set(0);
+    }
+
+    public void resetAfterCommit(String conversationId, String readerId) {
+        AfterCommit.run(() -> reset(conversationId, readerId));
+    }
+
+    public void evict(String conversationId) {
+        counters.keySet().removeIf(key -> key.conversationId().equals(conversationId));
+    }
+
+    /**
+     * Drops idle counters and realigns the remaining ones with the conversation rows.
+     * A counter that moved while its row was being read is left alone until the next round.
+     */
+    @Scheduled(fixedDelayString = "${application.chat.unread.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        long now = System.currentTimeMillis();
+        counters.entrySet().removeIf(entry -> now - entry.getValue().lastAccess() > idleMillis);
+        trimToCapacity();
+
+        Map<Key, Long> snapshot = new HashMap<>();
+        counters.forEach((key, counter) -> snapshot.put(key, counter.version()));
+        if(snapshot.isEmpty()) return;
+
+        List<String> conversationIds = snapshot.keySet().stream().map(Key::conversationId).distinct().toList();
+        int corrected = 0;
+        for(int from = 0; from < conversationIds.size(); from += RECONCILE_CHUNK) {
+            List<String> chunk = conversationIds.subList(from, Math.min(from + RECONCILE_CHUNK, conversationIds.size()));
+            for(Conversation conversation : conversationRepository.findAllById(chunk)) {
+                corrected += realign(conversation, conversation.getInitiator(), snapshot);
+                corrected += realign(conversation, conversation.getParticipant(), snapshot);
+            }
+        }
+        if(corrected > 0) {
+            log.info("Reconciled {} unread counters against conversation rows", corrected);
+        }
+    }
+
+    private int realign(Conversation conversation, String readerId, Map<Key, Long> snapshot) {
+        Key key = new Key(conversation.getId(), readerId);
+        Long version = snapshot.get(key);
+        UnreadCounter counter = counters.get(key);
+        if(version == null || counter == null) return 0;
+        return counter.reconcile(conversation.unreadCountFor(readerId), version) ? 1 : 0;
+    }
+
+    private void trimToCapacity() {
+        int excess = counters.size() - maxEntries;
+        if(excess <= 0) return;
+
+        List<Map.Entry<Key, UnreadCounter>> entries = new ArrayList<>(counters.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess()));
+        for(int i = 0; i < excess && i < entries.size(); i++) {
+            counters.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+    }
+
+    private long seed(Key key, UnreadCounter counter) {
+        // Re-read if a send or read landed while the row was loading, so it is neither lost nor counted twice
+        long fromDb = 0;
+        for(int attempt = 0; attempt < MAX_SEED_ATTEMPTS; attempt++) {
+            long version = counter.version();
+            fromDb = load(key);
+            if(counter.seed(fromDb, version)) return fromDb;
+
+            long value = counter.valueIfSeeded();
+            if(value >= 0) return value;
+        }
+        return counter.seedIfAbsent(fromDb);
+    }
+
+    private long load(Key key) {
+        return conversationRepository.findUnreadCount(key.conversationId(), key.readerId()).orElse(0);
+    }
+
+    private record Key(String conversationId, String readerId) {
+    }
+
+    private static final class UnreadCounter {
+
+        private long value;
+        private long version;
+        private boolean seeded;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        synchronized long valueIfSeeded() {
+            lastAccess = System.currentTimeMillis();
+            return seeded ? value : -1;
+        }
+
+        synchronized long addIfSeeded(int delta) {
+            lastAccess = System.currentTimeMillis();
+            version++;
+            if(!seeded) return -1;
+            value += delta;
+            return value;
+        }
+
+        synchronized void set(long newValue) {
+            lastAccess = System.currentTimeMillis();
+            version++;
+            value = newValue;
+            seeded = true;
+        }
+
+        synchronized boolean seed(long fromDb, long expectedVersion) {
+            if(version != expectedVersion) return false;
+            value = fromDb;
+            seeded = true;
+            return true;
+        }
+
+        synchronized long seedIfAbsent(long fromDb) {
+            if(!seeded) {
+                value = fromDb;
+                seeded = true;
+            }
+            return value;
+        }
+
+        synchronized boolean reconcile(long fromDb, long expectedVersion) {
+            if(!seeded || version != expectedVersion || value == fromDb) return false;
+            value = fromDb;
+            return true;
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        long lastAccess() {
+            return lastAccess;
+        }
+    }
+}
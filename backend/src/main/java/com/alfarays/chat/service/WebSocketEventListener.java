@@ -8,18 +8,24 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.util.Map;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class WebSocketEventListener {
 
     private final WebSocketService webSocketService;
+    private final NodeAffinity nodeAffinity;
 
     @EventListener
     public void handleWebSocketConnectListener(SessionConnectEvent event) {
         StompHeaderAccessor header = StompHeaderAccessor.wrap(event.getMessage());
         header.getUser();
         String userId = header.getUser().getName();
+        Map<String, Object> attributes = header.getSessionAttributes();
+        nodeAffinity.register(header.getSessionId(), userId,
+                attributes != null ? (String) attributes.get(NodeAffinity.ROUTE_ATTRIBUTE) : null);
         webSocketService.handleUserPresence(userId, true);
     }
 
@@ -28,6 +34,7 @@ public class WebSocketEventListener {
         StompHeaderAccessor header = StompHeaderAccessor.wrap(event.getMessage());
         header.getUser();
         String userId = header.getUser().getName();
+        nodeAffinity.unregister(event.getSessionId());
         webSocketService.handleUserPresence(userId, false);
     }
 }
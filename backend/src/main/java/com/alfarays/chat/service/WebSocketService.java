@@ -5,19 +5,27 @@ import com.alfarays.chat.entity.Message;
 import com.alfarays.chat.model.*;
 import com.alfarays.chat.repository.ConversationRepository;
 import com.alfarays.chat.repository.MessageRepository;
+import com.alfarays.events.PresenceChangedEvent;
 import com.alfarays.exceptions.AuthorizationException;
-import com.alfarays.user.entity.User;
+import com.alfarays.user.model.UserCard;
 import com.alfarays.user.repository.UserRepository;
+import com.alfarays.user.service.PresenceStore;
+import com.alfarays.user.service.UserCardService;
+import com.alfarays.util.AfterCommit;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
@@ -25,129 +33,167 @@ import java.util.concurrent.ConcurrentHashMap;
 public class WebSocketService {
 
     private final SimpMessagingTemplate messagingTemplate;
+    private final SimpUserRegistry simpUserRegistry;
     private final MessageRepository messageRepository;
     private final ConversationRepository conversationRepository;
     private final UserRepository userRepository;
-    private final ConcurrentHashMap<String, Integer> sessionTracker = new ConcurrentHashMap<>();
+    private final UserCardService userCardService;
+    private final ConversationSummaryService conversationSummaryService;
+    private final MessageTailCache messageTailCache;
+    private final UnreadCounterStore unreadCounterStore;
+    private final PresenceStore presenceStore;
+    private final ContactGraph contactGraph;
+    private final TypingThrottler typingThrottler;
+    private final ConversationSequencer conversationSequencer;
+    private final SendDeduplicator sendDeduplicator;
+    private final ConnectionDrain connectionDrain;
 
-    @Transactional
     public void handleUserPresence(String userId, boolean isConnecting) {
-        sessionTracker.compute(userId, (key, count) -> {
-            int newCount = (count == null) ? 0 : count;
-            if(isConnecting) newCount++;
-            else newCount = Math.max(0, newCount - 1);
-
-            // Transition logic
-            if(isConnecting && newCount == 1) broadcastStatusChange(userId, "ONLINE");
-            else if(!isConnecting && newCount == 0) broadcastStatusChange(userId, "OFFLINE");
-            return newCount;
-        });
+        // The session count changes in memory only; partners are notified after the transition is decided
+        if(isConnecting) {
+            PresenceStore.Transition transition = presenceStore.connect(userId);
+            if(transition != null) broadcastStatusChange(transition);
+        } else if(connectionDrain.isDraining()) {
+            // Asked to move to another node: OFFLINE only if the user does not show up there in time
+            presenceStore.disconnect(userId, connectionDrain.offlineGraceMillis(), this::broadcastStatusChange);
+        } else {
+            // OFFLINE is only published once the grace window passes without a new session
+            presenceStore.disconnect(userId, this::broadcastStatusChange);
+        }
     }
 
-    private void broadcastStatusChange(String userId, String status) {
-        userRepository.findByEmail(userId).ifPresent(user -> {
-            if(status.equals("OFFLINE")) {
-                if(!user.getStatus().equals("OFFLINE")) {
-                    user.setStatus(status);
-                    user.setLastSeen(LocalDateTime.now());
-                    userRepository.save(user);
-                }
-            } else {
-                if(!user.getStatus().equals("ONLINE")) {
-                    user.setStatus(status);
-                    userRepository.save(user);
-                }
-            }
-        });
+    @EventListener
+    public void onPresenceChanged(PresenceChangedEvent event) {
+        broadcastStatusChange(event.getTransition());
+    }
 
-        // Notify all partners
-        List<Conversation> conversations = conversationRepository
-                .findActiveConversationsByUsername(userId, PageRequest.of(0, 1000));
+    private void broadcastStatusChange(PresenceStore.Transition transition) {
+        String userId = transition.userId();
 
-        for(Conversation conversation : conversations) {
-            String partnerEmail = userId.equals(conversation.getInitiator())
-                    ? conversation.getParticipant()
-                    : conversation.getInitiator();
+        // Nobody else is connected, so there is nobody to tell
+        if(simpUserRegistry.getUserCount() == 0
+                || simpUserRegistry.getUserCount() == 1 && simpUserRegistry.getUser(userId) != null) {
+            return;
+        }
 
-            messagingTemplate.convertAndSendToUser(
-                    partnerEmail,
-                    "/queue/status",
-                    new StatusNotification(userId, status, LocalDateTime.now().toString())
-            );
+        StatusNotification notification = new StatusNotification(userId, transition.status(), transition.at().toString());
+        for(String partnerEmail : onlinePartners(userId)) {
+            messagingTemplate.convertAndSendToUser(partnerEmail, "/queue/status", notification);
         }
     }
 
+    /**
+     * Partners of {@code userId} that currently hold at least one STOMP session.
+     * Offline partners would only cost a registry lookup and a message that nobody receives.
+     */
+    private List<String> onlinePartners(String userId) {
+        return contactGraph.partnersOf(userId)
+                .stream()
+                .filter(partnerEmail -> simpUserRegistry.getUser(partnerEmail) != null)
+                .toList();
+    }
+
     @Transactional(readOnly = true)
     public void syncPartnerStatuses(String requesterEmail) {
-        List<Conversation> conversations = conversationRepository
-                .findActiveConversationsByUsername(requesterEmail, PageRequest.of(0, 1000));
-
-        for(Conversation conversation : conversations) {
-            String partnerEmail = requesterEmail.equals(conversation.getInitiator())
-                    ? conversation.getParticipant()
-                    : conversation.getInitiator();
-
-            // Check if partner is in our ACTIVE session map
-            boolean isPartnerOnline = sessionTracker.getOrDefault(partnerEmail, 0) > 0;
-            String status = isPartnerOnline ? "ONLINE" : "OFFLINE";
-
-            messagingTemplate.convertAndSendToUser(
-                    requesterEmail,
-                    "/queue/status",
-                    new StatusNotification(partnerEmail, status, LocalDateTime.now().toString())
-            );
-        }
+        Collection<String> partners = contactGraph.partnersOf(requesterEmail);
+        sendPresenceSnapshot(requesterEmail, partners, userCardService.byEmails(partners));
     }
 
-    @Transactional
+    @Transactional(readOnly = true)
     public void partnerStatus(String requesterEmail) {
-        // 1. Update the requester to ONLINE in the database
-        User requester = userRepository.findByEmail(requesterEmail)
-                .orElseThrow(() -> new RuntimeException("User not found"));
-
-        requester.setStatus("ONLINE");
-        userRepository.save(requester);
-
-        // 2. Fetch all conversations where the requester is a participant
-        List<Conversation> conversations = conversationRepository
-                .findActiveConversationsByUsername(requesterEmail, PageRequest.of(0, 1000));
-
-        for(Conversation conversation : conversations) {
-            // 3. Identify the OTHER person
-            String partnerEmail = requesterEmail.equals(conversation.getInitiator())
-                    ? conversation.getParticipant()
-                    : conversation.getInitiator();
-
-            userRepository.findByEmail(partnerEmail).ifPresent(partner -> {
-
-                // ACTION A: Tell the Partner that the Requester is now ONLINE
-                messagingTemplate.convertAndSendToUser(
-                        partnerEmail,
-                        "/queue/status",
-                        new StatusNotification(requesterEmail, "ONLINE", LocalDateTime.now().toString())
-                );
-
-                // ACTION B: Tell the Requester what this Partner's status is
-                messagingTemplate.convertAndSendToUser(
-                        requesterEmail,
-                        "/queue/status",
-                        new StatusNotification(
-                                partnerEmail,
-                                partner.getStatus(),
-                                partner.getLastSeen() != null ? partner.getLastSeen().toString() : ""
-                        )
-                );
-            });
+        // 1. The requester's own ONLINE status is recorded by the PresenceStore on STOMP connect
+        if(!userRepository.emailExists(requesterEmail).orElse(false)) {
+            throw new RuntimeException("User not found");
+        }
+
+        // 2. Resolve every partner card of the requester's active conversations in one query
+        Collection<String> partners = contactGraph.partnersOf(requesterEmail);
+        Map<String, UserCard> cards = userCardService.byEmails(partners);
+
+        // ACTION A: Tell the connected Partners that the Requester is now ONLINE
+        StatusNotification online = new StatusNotification(requesterEmail, "ONLINE", LocalDateTime.now().toString());
+        for(String partnerEmail : partners) {
+            if(simpUserRegistry.getUser(partnerEmail) != null) {
+                messagingTemplate.convertAndSendToUser(partnerEmail, "/queue/status", online);
+            }
         }
+
+        // ACTION B: Tell the Requester what every Partner's status is, in a single frame
+        sendPresenceSnapshot(requesterEmail, partners, cards);
     }
 
+    /**
+     * One frame with the status and last-seen of every partner; only {@link StatusNotification} deltas follow it.
+     */
+    private void sendPresenceSnapshot(String requesterEmail, Collection<String> partners, Map<String, UserCard> cards) {
+        List<PresenceSnapshot.PartnerPresence> entries = new ArrayList<>(partners.size());
+        for(String partnerEmail : partners) {
+            UserCard card = cards.get(UserCardService.key(partnerEmail));
+            LocalDateTime lastSeen = card != null ? card.lastSeen() : null;
+            // Cards carry the cluster-wide status; the local store only knows sessions on this instance
+            entries.add(new PresenceSnapshot.PartnerPresence(
+                    partnerEmail,
+                    card != null && PresenceStore.ONLINE.equals(card.status()) ? PresenceStore.ONLINE : PresenceStore.OFFLINE,
+                    lastSeen != null ? lastSeen.toString() : ""
+            ));
+        }
+
+        messagingTemplate.convertAndSendToUser(
+                requesterEmail,
+                "/queue/status",
+                new PresenceSnapshot(PresenceSnapshot.TYPE, entries, LocalDateTime.now().toString())
+        );
+    }
+
+    /**
+     * Answers a retried send from the dedup window: the sender gets the original message again and nothing
+     * is written or fanned out. Returns {@code false} when the send has not been seen recently.
+     */
+    public boolean replayIfSent(String sender, String clientMessageId) {
+        Optional<MessageResponse> original = sendDeduplicator.recall(sender, clientMessageId);
+        original.ifPresent(response -> messagingTemplate.convertAndSendToUser(sender, "/queue/message-sent", response));
+        return original.isPresent();
+    }
+
+    /**
+     * Same as {@link #replayIfSent}, for a retry the unique (sender_id, client_message_id) key rejected.
+     */
+    @Transactional(readOnly = true)
+    public boolean replayFromStore(String sender, String clientMessageId) {
+        Optional<MessageResponse> original = messageRepository.findBySenderAndClientMessageId(sender, clientMessageId)
+                .map(this::mapToResponse);
+        original.ifPresent(response -> {
+            sendDeduplicator.recordStoreHit();
+            sendDeduplicator.remember(sender, response);
+            messagingTemplate.convertAndSendToUser(sender, "/queue/message-sent", response);
+        });
+        return original.isPresent();
+    }
+
+    @Transactional
+    public void sendPrivateMessage(String conversationId, String sender, String content, String clientMessageId) {
+        store(conversationId, sender, content, clientMessageId, 0);
+    }
+
+    /**
+     * Writes a send again after its pipeline batch rolled back, keeping the sequence number {@code seq} it was
+     * first given unless another send has taken it since.
+     */
     @Transactional
-    public void sendPrivateMessage(String conversationId, String sender, String content) {
+    public void resendPrivateMessage(String conversationId, String sender, String content, String clientMessageId, long seq) {
+        store(conversationId, sender, content, clientMessageId, seq);
+    }
+
+    private void store(String conversationId, String sender, String content, String clientMessageId, long previousSeq) {
         Conversation conversation = conversationRepository.findById(conversationId)
                 .orElseThrow(() -> new AuthorizationException("No conversation exists"));
 
         Message message = Message.builder()
                 .conversation(conversation)
+                .seq(previousSeq > 0
+                        ? conversationSequencer.reuse(conversationId, previousSeq)
+                        : conversationSequencer.next(conversationId))
+                .clientMessageId(clientMessageId)
                 .senderId(sender)
                 .content(content)
                 .createdAt(LocalDateTime.now())
@@ -155,13 +201,21 @@ public class WebSocketService {
                 .build();
 
         messageRepository.save(message);
+        conversationSummaryService.onMessageSaved(message);
 
         MessageResponse response = mapToResponse(message);
+        messageTailCache.appendAfterCommit(response);
+        sendDeduplicator.rememberAfterCommit(sender, response);
 
         String receiver = sender.equals(conversation.getInitiator())
                 ? conversation.getParticipant()
                 : conversation.getInitiator();
 
+        // Fan out once the message is durable; the badge comes from the in-memory counter, not a COUNT(*)
+        AfterCommit.run(() -> deliverPrivateMessage(response, receiver, unreadCounterStore.increment(conversationId, receiver)));
+    }
+
+    public void deliverPrivateMessage(MessageResponse response, String receiver, long unreadCount) {
         messagingTemplate.convertAndSendToUser(
                 receiver,
                 "/queue/private-messages",
@@ -169,46 +223,42 @@ public class WebSocketService {
         );
 
         messagingTemplate.convertAndSendToUser(
-                sender,
+                response.getSenderId(),
                 "/queue/message-sent",
                 response
         );
 
-        long unreadCount =
-                messageRepository.countUnreadMessagesBySender(conversationId, receiver);
-
         messagingTemplate.convertAndSendToUser(
                 receiver,
                 "/queue/unread-count",
-                new UnreadCountUpdate(conversationId, unreadCount)
+                new UnreadCountUpdate(response.getConversationId(), unreadCount)
         );
     }
 
-    @Transactional
+    /**
+     * Deliberately non-transactional: typing events arrive on every keystroke and never touch the database
+     * once the sender's conversations are cached.
+     */
     public void notifyTyping(String conversationId, String userId, boolean isTyping) {
-        messagingTemplate.convertAndSend(
-                "/topic/conversation/" + conversationId + "/typing",
-                new TypingNotification(
-                        userId,
-                        isTyping,
-                        LocalDateTime.now().toString()
-                )
-        );
+        if(contactGraph.partnerIn(userId, conversationId).isEmpty()) {
+            log.warn("Ignoring typing event from {} for foreign conversation {}", userId, conversationId);
+            return;
+        }
+
+        typingThrottler.onTyping(conversationId, userId, isTyping);
     }
 
     @Transactional
     public void markConversationAsRead(String conversationId, String readerId) {
-        Conversation conv = conversationRepository.findById(conversationId)
+        String recipient = contactGraph.partnerIn(readerId, conversationId)
                 .orElseThrow(() -> new RuntimeException("Conversation not found"));
 
-        messageRepository.markAsReadByConversationAndUserId(conversationId, readerId);
+        // A single watermark write on the conversation row, however many messages were unread
+        conversationSummaryService.onConversationRead(conversationId, readerId);
+        messageTailCache.markReadAfterCommit(conversationId, readerId);
+        unreadCounterStore.resetAfterCommit(conversationId, readerId);
 
-        String recipient =
-                conv.getInitiator().equals(readerId)
-                        ? conv.getParticipant()
-                        : conv.getInitiator();
-
-        messagingTemplate.convertAndSendToUser(
+        AfterCommit.run(() -> messagingTemplate.convertAndSendToUser(
                 recipient,
                 "/queue/messages-read",
                 new ReadReceipt(
@@ -216,13 +266,45 @@ public class WebSocketService {
                         readerId,
                         LocalDateTime.now().toString()
                 )
-        );
+        ));
+    }
+
+    /**
+     * Applies one window of delivered acks from {@code recipientId}: a single UPDATE for the whole batch and a
+     * single {@link DeliveryReceipt} to the sender once it commits.
+     */
+    @Transactional
+    public void markDelivered(String conversationId, String recipientId, Collection<String> messageIds) {
+        Optional<String> sender = contactGraph.partnerIn(recipientId, conversationId);
+        if(sender.isEmpty()) {
+            log.warn("Ignoring delivered acks from {} for foreign conversation {}", recipientId, conversationId);
+            return;
+        }
+
+        LocalDateTime deliveredAt = LocalDateTime.now();
+        int updated = messageRepository.markDelivered(conversationId, recipientId, messageIds, deliveredAt);
+        if(updated == 0) return;
+
+        messageTailCache.markDeliveredAfterCommit(conversationId, messageIds, deliveredAt);
+
+        DeliveryReceipt receipt = new DeliveryReceipt(conversationId, recipientId, List.copyOf(messageIds), deliveredAt.toString());
+        AfterCommit.run(() -> messagingTemplate.convertAndSendToUser(sender.get(), "/queue/messages-delivered", receipt));
+    }
+
+    public void sendSync(String userId, ConversationSync sync) {
+        messagingTemplate.convertAndSendToUser(userId, "/queue/sync", sync);
+    }
+
+    public void sendError(String userId, ChatError error) {
+        messagingTemplate.convertAndSendToUser(userId, "/queue/errors", error);
     }
 
     private MessageResponse mapToResponse(Message message) {
         return MessageResponse.builder()
                 .id(message.getId())
                 .conversationId(message.getConversation().getId())
+                .seq(message.getSeq())
+                .clientMessageId(message.getClientMessageId())
                 .senderId(message.getSenderId())
                 .content(message.getContent())
                 .createdAt(message.getCreatedAt())
@@ -0,0 +1,69 @@
+package com.alfarays.configuration;
+
+import com.alfarays.chat.service.NodeAffinity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Tells a {@code /ws} handshake which node owns it. The route comes from the {@code conversationId} or {@code user}
+ * query parameter, since the handshake precedes STOMP authentication, and is kept as a session attribute for
+ * rebalancing. The owner is returned in {@code X-Chat-Owner} next to this node's {@code X-Chat-Node}; with
+ * {@code application.chat.affinity.handshake=redirect}, a handshake for an owner that advertises a URL is answered
+ * with a 307 to it instead of being accepted. Routing only: a client ignoring it still gets a working session.
+ */
+@Component
+@Slf4j
+public class AffinityHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final NodeAffinity nodeAffinity;
+    private final boolean redirect;
+
+    public AffinityHandshakeInterceptor(@Value("${application.chat.affinity.handshake:hint}") String handshakeMode,
+                                        NodeAffinity nodeAffinity) {
+        this.nodeAffinity = nodeAffinity;
+        this.redirect = "redirect".equals(handshakeMode);
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        String conversationId = params.getFirst("conversationId");
+        String user = params.getFirst("user");
+
+        String route = conversationId != null && !conversationId.isBlank() ? NodeAffinity.conversationRoute(conversationId)
+                : user != null && !user.isBlank() ? NodeAffinity.userRoute(user)
+                : null;
+
+        response.getHeaders().add("X-Chat-Node", nodeAffinity.nodeId());
+        if(route == null) return true;
+
+        String owner = nodeAffinity.ownerOf(route);
+        response.getHeaders().add("X-Chat-Owner", owner);
+        attributes.put(NodeAffinity.ROUTE_ATTRIBUTE, route);
+
+        String url = nodeAffinity.hint(route).getUrl();
+        if(redirect && !nodeAffinity.isLocal(route) && !url.isBlank()) {
+            log.debug("Redirecting handshake for {} to node {}", route, owner);
+            response.setStatusCode(HttpStatus.TEMPORARY_REDIRECT);
+            response.getHeaders().add("Location", url);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.alfarays.configuration;
+
+import com.alfarays.chat.service.ConnectionDrain;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Turns {@code /ws} handshakes away with a 503 while this node drains, so clients reconnect to another one.
+ */
+@Component
+@RequiredArgsConstructor
+public class DrainHandshakeInterceptor implements HandshakeInterceptor {
+
+    private final ConnectionDrain connectionDrain;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if(!connectionDrain.isDraining()) return true;
+
+        response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+        response.getHeaders().add("Retry-After", "1");
+        return false;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
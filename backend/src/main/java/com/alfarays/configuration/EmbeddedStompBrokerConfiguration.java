@@ -0,0 +1,45 @@
+package com.alfarays.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.core.settings.impl.AddressSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Starts an in-VM Artemis broker with a STOMP acceptor when {@code application.chat.broker.mode} is
+ * {@code embedded}, so the broker relay can be exercised on one machine without an external broker.
+ * {@code /queue} maps to anycast and {@code /topic} to multicast addresses, created on first use and
+ * kept in memory only. Run several instances against one of them by starting the first with
+ * {@code embedded} and the others with {@code relay} pointed at it. The broker has no security, so the
+ * acceptor listens on loopback unless {@code application.chat.broker.embedded.host} says otherwise.
+ */
+@Configuration
+@ConditionalOnProperty(name = "application.chat.broker.mode", havingValue = "embedded")
+@Slf4j
+public class EmbeddedStompBrokerConfiguration {
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public EmbeddedActiveMQ embeddedStompBroker(@Value("${application.chat.broker.embedded.host:127.0.0.1}") String host,
+                                                @Value("${application.chat.broker.embedded.port:61613}") int port) throws Exception {
+        ConfigurationImpl configuration = new ConfigurationImpl();
+        configuration.setPersistenceEnabled(false);
+        configuration.setSecurityEnabled(false);
+        configuration.setJMXManagementEnabled(false);
+        configuration.addAcceptorConfiguration("stomp",
+                "tcp://" + host + ":" + port + "?protocols=STOMP;anycastPrefix=/queue/;multicastPrefix=/topic/");
+        configuration.addAddressSetting("#", new AddressSettings()
+                .setAutoCreateAddresses(true)
+                .setAutoCreateQueues(true)
+                .setAutoDeleteAddresses(true)
+                .setAutoDeleteQueues(true));
+
+        log.info("Starting embedded STOMP broker on {}:{}", host, port);
+        EmbeddedActiveMQ broker = new EmbeddedActiveMQ();
+        broker.setConfiguration(configuration);
+        return broker;
+    }
+}
@@ -1,37 +1,91 @@
 package com.alfarays.configuration;
 
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+/**
+ * STOMP broker setup. {@code application.chat.broker.mode} selects where {@code /topic} and {@code /queue} live:
+ * <ul>
+ *     <li>{@code simple}: the in-memory broker of this JVM; only sessions on the same node can be reached;</li>
+ *     <li>{@code relay}: an external STOMP broker shared by every node. Unresolved {@code /user} destinations and
+ *     the user registry are broadcast through it, so {@code convertAndSendToUser} and {@code SimpUserRegistry}
+ *     see users connected to any node;</li>
+ *     <li>{@code embedded}: the relay, pointed at the in-VM stand-in broker of {@link EmbeddedStompBrokerConfiguration}.</li>
+ * </ul>
+ */
 @Configuration
 @EnableWebSocketMessageBroker
-@RequiredArgsConstructor
+@Slf4j
 public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer {
 
+    static final String USER_DESTINATION_BROADCAST = "/topic/unresolved-user-destination";
+    static final String USER_REGISTRY_BROADCAST = "/topic/simp-user-registry";
+
     private final WebSocketAuthInterceptor webSocketAuthInterceptor;
+    private final AffinityHandshakeInterceptor affinityHandshakeInterceptor;
+    private final DrainHandshakeInterceptor drainHandshakeInterceptor;
+    private final String brokerMode;
+    private final String relayHost;
+    private final int relayPort;
+    private final String relayLogin;
+    private final String relayPasscode;
+    private final String relayVirtualHost;
+    private final int embeddedPort;
+
+    public WebSocketConfiguration(@Value("${application.chat.broker.mode:simple}") String brokerMode,
+                                  @Value("${application.chat.broker.relay.host:localhost}") String relayHost,
+                                  @Value("${application.chat.broker.relay.port:61613}") int relayPort,
+                                  @Value("${application.chat.broker.relay.login:guest}") String relayLogin,
+                                  @Value("${application.chat.broker.relay.passcode:guest}") String relayPasscode,
+                                  @Value("${application.chat.broker.relay.virtual-host:}") String relayVirtualHost,
+                                  @Value("${application.chat.broker.embedded.port:61613}") int embeddedPort,
+                                  WebSocketAuthInterceptor webSocketAuthInterceptor,
+                                  AffinityHandshakeInterceptor affinityHandshakeInterceptor,
+                                  DrainHandshakeInterceptor drainHandshakeInterceptor) {
+        this.webSocketAuthInterceptor = webSocketAuthInterceptor;
+        this.affinityHandshakeInterceptor = affinityHandshakeInterceptor;
+        this.drainHandshakeInterceptor = drainHandshakeInterceptor;
+        this.brokerMode = brokerMode;
+        this.relayHost = relayHost;
+        this.relayPort = relayPort;
+        this.relayLogin = relayLogin;
+        this.relayPasscode = relayPasscode;
+        this.relayVirtualHost = relayVirtualHost;
+        this.embeddedPort = embeddedPort;
+    }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
 
-        // ✅ ONLY real broker destinations
-        registry.enableSimpleBroker("/topic", "/queue");
+        switch(brokerMode) {
+            case "simple" -> registry.enableSimpleBroker("/topic", "/queue");
+            case "relay" -> relay(registry, relayHost, relayPort);
+            case "embedded" -> relay(registry, "127.0.0.1", embeddedPort);
+            default -> throw new IllegalStateException("Unknown application.chat.broker.mode: " + brokerMode);
+        }
 
         // ✅ Application-level endpoints
         registry.setApplicationDestinationPrefixes("/app");
 
         // ✅ Virtual user prefix (DO NOT add to simple broker)
         registry.setUserDestinationPrefix("/user");
+
+        // Frames from one session reach the handlers in the order they were received
+        registry.setPreserveReceiveOrder(true);
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
+                .addInterceptors(drainHandshakeInterceptor, affinityHandshakeInterceptor)
                 .withSockJS();
     }
 
@@ -39,4 +93,24 @@ public class WebSocketConfiguration implements WebSocketMessageBrokerConfigurer
     public void configureClientInboundChannel(ChannelRegistration registration) {
         registration.interceptors(webSocketAuthInterceptor);
     }
+
+    private void relay(MessageBrokerRegistry registry, String host, int port) {
+        log.info("Relaying STOMP destinations to broker at {}:{}", host, port);
+
+        StompBrokerRelayRegistration relay = registry.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(host)
+                .setRelayPort(port)
+                .setClientLogin(relayLogin)
+                .setClientPasscode(relayPasscode)
+                .setSystemLogin(relayLogin)
+                .setSystemPasscode(relayPasscode)
+                // A /user destination with no local session is re-published for the node that has it
+                .setUserDestinationBroadcast(USER_DESTINATION_BROADCAST)
+                // Every node shares its sessions so SimpUserRegistry answers for the whole cluster
+                .setUserRegistryBroadcast(USER_REGISTRY_BROADCAST);
+
+        if(!relayVirtualHost.isBlank()) {
+            relay.setVirtualHost(relayVirtualHost);
+        }
+    }
 }
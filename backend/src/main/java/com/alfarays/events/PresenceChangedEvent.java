@@ -0,0 +1,21 @@
+package com.alfarays.events;
+
+import com.alfarays.user.service.PresenceStore;
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * A presence transition decided outside any session callback, such as the OFFLINE of a user whose
+ * only sessions were on an instance that stopped heartbeating.
+ */
+@Getter
+public class PresenceChangedEvent extends ApplicationEvent {
+
+    private final PresenceStore.Transition transition;
+
+    public PresenceChangedEvent(Object source, PresenceStore.Transition transition) {
+        super(source);
+        this.transition = transition;
+    }
+
+}
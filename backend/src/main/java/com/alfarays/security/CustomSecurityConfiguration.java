@@ -7,6 +7,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.password.CompromisedPasswordChecker;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -20,6 +21,7 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.security.web.authentication.password.HaveIBeenPwnedRestApiPasswordChecker;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
 
 @Configuration
 @EnableWebSecurity
@@ -43,7 +45,10 @@ public class CustomSecurityConfiguration {
             "/auth/**",
             "/favicon.ico",
             "/uploads/**",
-            "/actuator/**",
+            // Probes and build info only; metrics and drain are not public
+            "/actuator/health",
+            "/actuator/health/**",
+            "/actuator/info",
             "/swagger-ui/**",
             "/v3/api-docs/**",
             "/swagger-ui.html",
@@ -54,6 +59,9 @@ public class CustomSecurityConfiguration {
             "/ws/**"
     };
 
+    private static final IpAddressMatcher LOOPBACK_V4 = new IpAddressMatcher("127.0.0.0/8");
+    private static final IpAddressMatcher LOOPBACK_V6 = new IpAddressMatcher("::1");
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
 
@@ -73,6 +81,10 @@ public class CustomSecurityConfiguration {
 
         // Authorization rules
         http.authorizeHttpRequests(auth -> auth
+                // Draining takes a node out of service, so only the pod itself may start it
+                .requestMatchers("/actuator/drain", "/actuator/drain/**").access((authentication, context) ->
+                        new AuthorizationDecision(LOOPBACK_V4.matches(context.getRequest())
+                                || LOOPBACK_V6.matches(context.getRequest())))
                 .requestMatchers(PUBLIC_URIS).permitAll()
                 .anyRequest().authenticated()
         );
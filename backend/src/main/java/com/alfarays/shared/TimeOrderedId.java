@@ -0,0 +1,21 @@
+package com.alfarays.shared;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Marks a {@code String} identifier that is assigned a time-ordered UUIDv7 on insert.
+ * Rows stored earlier keep their random UUIDv4 ids, which stay valid keys everywhere they are referenced;
+ * only new rows append to the right edge of the index.
+ */
+@IdGeneratorType(TimeOrderedIdGenerator.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface TimeOrderedId {
+}
@@ -0,0 +1,70 @@
+package com.alfarays.shared;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.security.SecureRandom;
+import java.util.EnumSet;
+
+/**
+ * Generates RFC 9562 UUIDv7 strings: 48 bits of Unix epoch milliseconds, then a 12 bit counter that keeps
+ * ids issued within the same millisecond strictly increasing, then 62 random bits. Lower-case hex makes the
+ * string form sort in creation order, so inserts append to the right edge of the clustered index.
+ */
+public class TimeOrderedIdGenerator implements BeforeExecutionGenerator {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int MAX_COUNTER = 0xFFF;
+
+    private static long lastMillis;
+    private static int counter;
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        return nextId();
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    public static String nextId() {
+        long millis;
+        int sequence;
+        synchronized(TimeOrderedIdGenerator.class) {
+            long now = System.currentTimeMillis();
+            if(now > lastMillis) {
+                lastMillis = now;
+                counter = RANDOM.nextInt(MAX_COUNTER / 2);
+            } else if(++counter > MAX_COUNTER) {
+                // Counter exhausted or clock moved backwards: borrow the next millisecond
+                lastMillis++;
+                counter = 0;
+            }
+            millis = lastMillis;
+            sequence = counter;
+        }
+
+        long mostSignificant = (millis << 16) | 0x7000L | sequence;
+        long leastSignificant = (RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return format(mostSignificant, leastSignificant);
+    }
+
+    private static String format(long msb, long lsb) {
+        char[] out = new char[36];
+        int position = 0;
+        for(int i = 0; i < 32; i++) {
+            if(i == 8 || i == 12 || i == 16 || i == 20) {
+                out[position++] = '-';
+            }
+            long word = i < 16 ? msb : lsb;
+            int shift = (15 - (i % 16)) * 4;
+            out[position++] = HEX[(int) ((word >>> shift) & 0xF)];
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,37 @@
+package com.alfarays.user.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One row per instance in the shared presence registry ({@code application.chat.presence.registry=jdbc}).
+ * Mapped so the schema update creates the table; {@link com.alfarays.user.service.JdbcPresenceRegistry}
+ * reads and writes it with plain SQL against the database clock.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(
+        name = "_presence_nodes",
+        indexes = @Index(name = "idx_presence_nodes_heartbeat", columnList = "heartbeat_at")
+)
+public class PresenceNode {
+
+    @Id
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Column(name = "address")
+    private String address;
+
+    @Column(name = "draining", nullable = false)
+    private boolean draining;
+
+    @Column(name = "heartbeat_at", nullable = false, columnDefinition = "DATETIME(3)")
+    private LocalDateTime heartbeatAt;
+}
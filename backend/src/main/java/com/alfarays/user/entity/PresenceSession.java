@@ -0,0 +1,49 @@
+package com.alfarays.user.entity;
+
+import jakarta.persistence.*;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Number of STOMP sessions a user holds on one instance, as published to the shared presence registry.
+ * Mapped so the schema update creates the table; {@link com.alfarays.user.service.JdbcPresenceRegistry}
+ * reads and writes it with plain SQL.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(
+        name = "_presence_sessions",
+        indexes = @Index(name = "idx_presence_sessions_user", columnList = "user_id")
+)
+public class PresenceSession {
+
+    @EmbeddedId
+    private Key id;
+
+    @Column(name = "sessions", nullable = false)
+    private int sessions;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    @Embeddable
+    public static class Key implements Serializable {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        @Column(name = "node_id", length = 64)
+        private String nodeId;
+
+        @Column(name = "user_id")
+        private String userId;
+    }
+}
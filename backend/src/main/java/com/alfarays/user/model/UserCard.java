@@ -0,0 +1,14 @@
+package com.alfarays.user.model;
+
+import java.time.LocalDateTime;
+
+public record UserCard(
+        String email,
+        String firstname,
+        String lastname,
+        String profile,
+        String status,
+        LocalDateTime lastSeen,
+        LocalDateTime lastLogin
+) {
+}
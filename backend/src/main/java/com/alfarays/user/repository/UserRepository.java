@@ -1,12 +1,15 @@
 package com.alfarays.user.repository;
 
 import com.alfarays.user.entity.User;
+import com.alfarays.user.model.UserCard;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -18,4 +21,11 @@ public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificat
     @Query(name = "User.emailExists")
     Optional<Boolean> emailExists(@Param("email") String email);
 
+    @Query("""
+            SELECT new com.alfarays.user.model.UserCard(U.email, U.firstname, U.lastname, P.path, U.status, U.lastSeen, U.lastLogin)
+            FROM User U LEFT JOIN U.profile P
+            WHERE lower(U.email) IN :emails
+            """)
+    List<UserCard> findCardsByEmails(@Param("emails") Collection<String> emails);
+
 }
\ No newline at end of file
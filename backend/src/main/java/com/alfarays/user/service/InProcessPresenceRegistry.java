@@ -0,0 +1,59 @@
+package com.alfarays.user.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single-instance registry: there are no other nodes, so nobody is ever connected elsewhere.
+ * Selected by {@code application.chat.presence.registry=local}, the default.
+ */
+@Component
+@ConditionalOnProperty(name = "application.chat.presence.registry", havingValue = "local", matchIfMissing = true)
+public class InProcessPresenceRegistry implements PresenceRegistry {
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    @Override
+    public String nodeId() {
+        return "local";
+    }
+
+    @Override
+    public Map<String, String> liveNodes() {
+        return draining.get() ? Map.of() : Map.of(nodeId(), "");
+    }
+
+    @Override
+    public void drain() {
+        draining.set(true);
+    }
+
+    @Override
+    public void publish(Map<String, Integer> sessionsByUser) {
+    }
+
+    @Override
+    public Set<String> connectedElsewhere(Collection<String> userIds) {
+        return Set.of();
+    }
+
+    @Override
+    public boolean connectedElsewhere(String userId) {
+        return false;
+    }
+
+    @Override
+    public Collection<String> heartbeat() {
+        return List.of();
+    }
+
+    @Override
+    public void leave() {
+    }
+}
@@ -0,0 +1,209 @@
+package com.alfarays.user.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry shared by all instances through the {@code _presence_nodes} and {@code _presence_sessions} tables
+ * (mapped by {@link com.alfarays.user.entity.PresenceNode} and {@link com.alfarays.user.entity.PresenceSession});
+ * selected by {@code application.chat.presence.registry=jdbc}.
+ * Heartbeats are stamped and compared with the database clock, so instance clock skew does not matter.
+ * A node that misses heartbeats for {@code ttl-ms} is ignored by every lookup; the first survivor to delete its
+ * row takes its sessions with it and reports the users left with no session anywhere. Any database every instance
+ * can reach works as the shared store, including a single local MySQL shared by instances on one machine.
+ */
+@Component
+@ConditionalOnProperty(name = "application.chat.presence.registry", havingValue = "jdbc")
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class JdbcPresenceRegistry implements PresenceRegistry {
+
+    private static final int IN_CHUNK = 500;
+
+    private static final String JOIN =
+            "INSERT INTO _presence_nodes (node_id, address, draining, heartbeat_at) VALUES (?, ?, ?, CURRENT_TIMESTAMP(3)) " +
+                    "ON DUPLICATE KEY UPDATE address = VALUES(address), draining = VALUES(draining), heartbeat_at = CURRENT_TIMESTAMP(3)";
+    private static final String BEAT =
+            "UPDATE _presence_nodes SET heartbeat_at = CURRENT_TIMESTAMP(3) WHERE node_id = ?";
+    private static final String UPSERT_SESSIONS =
+            "INSERT INTO _presence_sessions (node_id, user_id, sessions) VALUES (?, ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE sessions = VALUES(sessions)";
+    private static final String DELETE_SESSIONS =
+            "DELETE FROM _presence_sessions WHERE node_id = ? AND user_id = ?";
+    private static final String LIVE_NODES =
+            "SELECT node_id, address FROM _presence_nodes " +
+                    "WHERE draining = FALSE AND heartbeat_at > CURRENT_TIMESTAMP(3) - INTERVAL ? MICROSECOND";
+    private static final String DRAIN =
+            "UPDATE _presence_nodes SET draining = TRUE WHERE node_id = ?";
+    private static final String CONNECTED_ELSEWHERE =
+            "SELECT DISTINCT s.user_id FROM _presence_sessions s JOIN _presence_nodes n ON n.node_id = s.node_id " +
+                    "WHERE s.node_id <> ? AND n.heartbeat_at > CURRENT_TIMESTAMP(3) - INTERVAL ? MICROSECOND " +
+                    "AND s.user_id IN (%s)";
+    private static final String DEAD_NODES =
+            "SELECT node_id FROM _presence_nodes WHERE heartbeat_at < CURRENT_TIMESTAMP(3) - INTERVAL ? MICROSECOND";
+    private static final String CLAIM_DEAD_NODE =
+            "DELETE FROM _presence_nodes WHERE node_id = ? AND heartbeat_at < CURRENT_TIMESTAMP(3) - INTERVAL ? MICROSECOND";
+    private static final String NODE_USERS =
+            "SELECT user_id FROM _presence_sessions WHERE node_id = ?";
+    private static final String DELETE_NODE_SESSIONS =
+            "DELETE FROM _presence_sessions WHERE node_id = ?";
+    private static final String DELETE_NODE =
+            "DELETE FROM _presence_nodes WHERE node_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String nodeId;
+    private final String advertisedUrl;
+    private final long ttlMicros;
+    private volatile boolean draining;
+
+    // What this node has published, replayed if other nodes reaped it during a long pause
+    private final ConcurrentHashMap<String, Integer> published = new ConcurrentHashMap<>();
+
+    public JdbcPresenceRegistry(@Value("${application.chat.presence.node-id:}") String nodeId,
+                                @Value("${application.chat.presence.advertised-url:}") String advertisedUrl,
+                                @Value("${application.chat.presence.ttl-ms:15000}") long ttlMillis,
+                                JdbcTemplate jdbcTemplate,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry) {
+        String base = nodeId == null || nodeId.isBlank() ? System.getenv().getOrDefault("HOSTNAME", "node") : nodeId;
+        // A restarted instance is a new node, so survivors can reap the sessions of its previous life
+        this.nodeId = base + "-" + UUID.randomUUID().toString().substring(0, 8);
+        this.advertisedUrl = advertisedUrl;
+        this.ttlMicros = ttlMillis * 1000;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+
+        Gauge.builder("chat.presence.registry.users", published, Map::size)
+                .description("Users this node has published to the shared presence registry")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void join() {
+        jdbcTemplate.update(JOIN, nodeId, advertisedUrl, draining);
+        log.info("Joined the presence registry as node {}", nodeId);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Map<String, String> liveNodes() {
+        Map<String, String> nodes = new HashMap<>();
+        jdbcTemplate.query(LIVE_NODES, rs -> {
+            String address = rs.getString("address");
+            nodes.put(rs.getString("node_id"), address != null ? address : "");
+        }, ttlMicros);
+        // This node counts as live even if its own heartbeat is late
+        if(!draining) nodes.putIfAbsent(nodeId, advertisedUrl);
+        return nodes;
+    }
+
+    @Override
+    public void drain() {
+        draining = true;
+        jdbcTemplate.update(DRAIN, nodeId);
+        log.info("Node {} no longer offered for new sessions", nodeId);
+    }
+
+    @Override
+    public void publish(Map<String, Integer> sessionsByUser) {
+        if(sessionsByUser.isEmpty()) return;
+
+        List<Object[]> upserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        sessionsByUser.forEach((userId, sessions) -> {
+            if(sessions > 0) upserts.add(new Object[]{nodeId, userId, sessions});
+            else deletes.add(new Object[]{nodeId, userId});
+        });
+
+        if(!upserts.isEmpty()) jdbcTemplate.batchUpdate(UPSERT_SESSIONS, upserts);
+        if(!deletes.isEmpty()) jdbcTemplate.batchUpdate(DELETE_SESSIONS, deletes);
+
+        sessionsByUser.forEach((userId, sessions) -> {
+            if(sessions > 0) published.put(userId, sessions);
+            else published.remove(userId);
+        });
+    }
+
+    @Override
+    public Set<String> connectedElsewhere(Collection<String> userIds) {
+        if(userIds.isEmpty()) return Set.of();
+
+        List<String> ids = new ArrayList<>(userIds);
+        Set<String> connected = new HashSet<>();
+        for(int from = 0; from < ids.size(); from += IN_CHUNK) {
+            List<String> chunk = ids.subList(from, Math.min(from + IN_CHUNK, ids.size()));
+
+            Object[] args = new Object[chunk.size() + 2];
+            args[0] = nodeId;
+            args[1] = ttlMicros;
+            for(int i = 0; i < chunk.size(); i++) args[i + 2] = chunk.get(i);
+
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            connected.addAll(jdbcTemplate.queryForList(CONNECTED_ELSEWHERE.formatted(placeholders), String.class, args));
+        }
+        return connected;
+    }
+
+    @Override
+    public Collection<String> heartbeat() {
+        if(jdbcTemplate.update(BEAT, nodeId) == 0) {
+            // Another node took this one for dead; come back with everything published so far
+            log.warn("Node {} was reaped from the presence registry, rejoining", nodeId);
+            join();
+            publish(Map.copyOf(published));
+        }
+
+        Set<String> orphaned = new HashSet<>();
+        for(String deadNode : jdbcTemplate.queryForList(DEAD_NODES, String.class, ttlMicros)) {
+            List<String> users = transactionTemplate.execute(status -> {
+                // Only the node whose delete wins reaps the sessions, so each OFFLINE is published once
+                if(jdbcTemplate.update(CLAIM_DEAD_NODE, deadNode, ttlMicros) == 0) return List.<String>of();
+                List<String> released = jdbcTemplate.queryForList(NODE_USERS, String.class, deadNode);
+                jdbcTemplate.update(DELETE_NODE_SESSIONS, deadNode);
+                return released;
+            });
+            if(users == null || users.isEmpty()) continue;
+
+            log.info("Reaped presence node {} holding {} users", deadNode, users.size());
+            orphaned.addAll(users);
+        }
+
+        if(orphaned.isEmpty()) return List.of();
+        orphaned.removeAll(connectedElsewhere(orphaned));
+        return orphaned;
+    }
+
+    @Override
+    public void leave() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update(DELETE_NODE_SESSIONS, nodeId);
+            jdbcTemplate.update(DELETE_NODE, nodeId);
+        });
+        published.clear();
+        log.info("Left the presence registry as node {}", nodeId);
+    }
+}
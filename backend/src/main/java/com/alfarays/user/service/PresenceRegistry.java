@@ -0,0 +1,52 @@
+package com.alfarays.user.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cluster-wide view of who holds STOMP sessions. Every instance publishes the session count of each of its
+ * users under its own node id and renews a heartbeat; a user is connected while any live node reports a session
+ * for them. User ids are the lower-cased keys of {@link UserCardService#key}.
+ */
+public interface PresenceRegistry {
+
+    String nodeId();
+
+    /**
+     * Nodes whose heartbeat is current and that accept new sessions, this one included unless it is draining,
+     * each mapped to the URL clients use to reach it directly, or an empty string when it advertises none.
+     */
+    Map<String, String> liveNodes();
+
+    /**
+     * Stops offering this node for new sessions; its existing sessions still count until they move.
+     */
+    void drain();
+
+    /**
+     * Replaces this node's session counts for the given users; a count of zero removes the user from this node.
+     */
+    void publish(Map<String, Integer> sessionsByUser);
+
+    /**
+     * The subset of {@code userIds} holding a session on some other live node.
+     */
+    Set<String> connectedElsewhere(Collection<String> userIds);
+
+    default boolean connectedElsewhere(String userId) {
+        return !connectedElsewhere(List.of(userId)).isEmpty();
+    }
+
+    /**
+     * Renews this node's heartbeat and forgets nodes that missed theirs. Returns the users that were only
+     * connected through a forgotten node, whose OFFLINE transition nobody else will publish.
+     */
+    Collection<String> heartbeat();
+
+    /**
+     * Withdraws this node and all of its sessions.
+     */
+    void leave();
+}
@@ -0,0 +1,333 @@
+package com.alfarays.user.service;
+
+import com.alfarays.events.PresenceChangedEvent;
+import com.alfarays.user.model.UserCard;
+import com.alfarays.util.HashedTimingWheel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Authoritative in-memory presence of the users connected to this instance.
+ * Session counts only change inside {@link ConcurrentHashMap#compute}, which never does I/O;
+ * the resulting status and last-seen values are written back to {@code _users} in batches
+ * every {@code application.chat.presence.flush-interval-ms}, coalesced to the newest state per user.
+ * When the last session closes, the user stays ONLINE for {@code offline-grace-ms}; a reconnect within
+ * that window is invisible to partners and to the database.
+ * <p>
+ * Session counts are also published to the {@link PresenceRegistry} on every flush, so a user who moves to
+ * another instance is not reported OFFLINE by the one they left: ONLINE and OFFLINE transitions are only
+ * announced, and OFFLINE only written, when no other live node holds a session. Keep the grace window longer
+ * than the flush interval so the other node's count is visible before the grace timer fires.
+ */
+@Component
+@Slf4j
+public class PresenceStore {
+
+    public static final String ONLINE = "ONLINE";
+    public static final String OFFLINE = "OFFLINE";
+
+    private static final String UPDATE_PRESENCE =
+            "UPDATE _users SET status = ?, last_seen = COALESCE(?, last_seen) WHERE email = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PresenceRegistry registry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long offlineGraceMillis;
+    private final HashedTimingWheel offlineTimers;
+    private final ConcurrentHashMap<String, Presence> presence = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Presence> pending = new ConcurrentHashMap<>();
+    // Users whose session count changed since it was last published to the registry
+    private final Set<String> unpublished = ConcurrentHashMap.newKeySet();
+
+    public PresenceStore(@Value("${application.chat.presence.offline-grace-ms:5000}") long offlineGraceMillis,
+                         @Value("${application.chat.presence.timer-tick-ms:100}") long timerTickMillis,
+                         @Qualifier("applicationTaskExecutor") Executor executor,
+                         JdbcTemplate jdbcTemplate,
+                         PresenceRegistry registry,
+                         ApplicationEventPublisher eventPublisher,
+                         MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.registry = registry;
+        this.eventPublisher = eventPublisher;
+        this.offlineGraceMillis = offlineGraceMillis;
+        this.offlineTimers = new HashedTimingWheel("presence-offline-timer", timerTickMillis, 512, executor);
+
+        Gauge.builder("chat.presence.online", presence, map -> map.values().stream().filter(Presence::online).count())
+                .description("Users with at least one open session on this instance")
+                .register(meterRegistry);
+        Gauge.builder("chat.presence.lingering", presence, map -> map.values().stream().filter(p -> p.offlineTimer() != null).count())
+                .description("Users whose last session closed and who are inside the offline grace window")
+                .register(meterRegistry);
+        Gauge.builder("chat.presence.pending", pending, Map::size)
+                .description("Presence changes waiting to be flushed to the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Registers a new session and returns the ONLINE transition, or {@code null} if the user was already
+     * online, reconnected inside the offline grace window or is connected through another node.
+     */
+    public Transition connect(String userId) {
+        String userKey = UserCardService.key(userId);
+        Transition[] transition = new Transition[1];
+        presence.compute(userKey, (key, current) -> {
+            unpublished.add(key);
+            if(current != null && current.offlineTimer() != null) {
+                // Back before the grace window ran out: partners never saw the user leave
+                current.offlineTimer().get().cancel();
+                return new Presence(1, current.lastSeen(), null);
+            }
+
+            int sessions = current == null ? 1 : current.sessions() + 1;
+            Presence next = new Presence(sessions, current == null ? null : current.lastSeen(), null);
+            if(sessions == 1) {
+                transition[0] = new Transition(userId, ONLINE, LocalDateTime.now());
+                pending.put(key, next);
+            }
+            return next;
+        });
+
+        if(transition[0] != null && registry.connectedElsewhere(userKey)) return null;
+        return transition[0];
+    }
+
+    /**
+     * Releases a session. Once the last one is gone and the grace window passes without a reconnect,
+     * the OFFLINE transition is handed to {@code onOffline}, on the caller's thread when there is no grace window.
+     */
+    public void disconnect(String userId, Consumer<Transition> onOffline) {
+        disconnect(userId, offlineGraceMillis, onOffline);
+    }
+
+    /**
+     * As {@link #disconnect(String, Consumer)}, with a grace window of {@code graceMillis} for this session,
+     * such as one that was asked to move to another node.
+     */
+    public void disconnect(String userId, long graceMillis, Consumer<Transition> onOffline) {
+        String userKey = UserCardService.key(userId);
+        Transition[] transition = new Transition[1];
+        presence.compute(userKey, (key, current) -> {
+            if(current == null || current.sessions() == 0) return current;
+            unpublished.add(key);
+
+            int sessions = current.sessions() - 1;
+            if(sessions > 0) return new Presence(sessions, current.lastSeen(), null);
+
+            LocalDateTime now = LocalDateTime.now();
+            if(graceMillis <= 0) {
+                Presence next = new Presence(0, now, null);
+                transition[0] = new Transition(userId, OFFLINE, now);
+                pending.put(key, next);
+                return next;
+            }
+
+            AtomicReference<HashedTimingWheel.Timeout> timer = new AtomicReference<>();
+            timer.set(offlineTimers.schedule(() -> expire(key, userId, timer, onOffline),
+                    graceMillis, TimeUnit.MILLISECONDS));
+            return new Presence(0, now, timer);
+        });
+
+        announceOffline(userKey, transition[0], onOffline);
+    }
+
+    private void expire(String key, String userId, AtomicReference<HashedTimingWheel.Timeout> timer,
+                        Consumer<Transition> onOffline) {
+        Transition[] transition = new Transition[1];
+        presence.computeIfPresent(key, (k, current) -> {
+            // A reconnect, or a later disconnect with its own timer, has superseded this one
+            if(current.offlineTimer() != timer) return current;
+
+            unpublished.add(k);
+            Presence next = new Presence(0, current.lastSeen(), null);
+            transition[0] = new Transition(userId, OFFLINE, current.lastSeen());
+            pending.put(k, next);
+            return next;
+        });
+
+        announceOffline(key, transition[0], onOffline);
+    }
+
+    private void announceOffline(String key, Transition transition, Consumer<Transition> onOffline) {
+        if(transition == null) return;
+        try {
+            // Still connected through another node: partners keep seeing the user online
+            if(registry.connectedElsewhere(key)) return;
+        } catch(Exception e) {
+            log.warn("Presence registry lookup for {} failed, announcing OFFLINE", key, e);
+        }
+        onOffline.accept(transition);
+    }
+
+    /**
+     * Whether the user holds a session on this instance, or is inside its grace window here.
+     */
+    public boolean isOnline(String userId) {
+        Presence current = presence.get(UserCardService.key(userId));
+        return current != null && current.online();
+    }
+
+    /**
+     * Replaces the persisted status and last-seen on a card with the live values, when this instance knows them.
+     * Users this instance does not know about keep the persisted status, which every node keeps current.
+     */
+    public UserCard overlay(UserCard card) {
+        String key = UserCardService.key(card.email());
+        Presence current = presence.get(key);
+        if(current == null) return card;
+        // Only just left this node; a session elsewhere keeps the user online
+        if(!current.online() && registry.connectedElsewhere(key)) return card;
+        return new UserCard(
+                card.email(),
+                card.firstname(),
+                card.lastname(),
+                card.profile(),
+                current.online() ? ONLINE : OFFLINE,
+                current.lastSeen() != null ? current.lastSeen() : card.lastSeen(),
+                card.lastLogin()
+        );
+    }
+
+    @Scheduled(fixedDelayString = "${application.chat.presence.flush-interval-ms:1000}")
+    public void flush() {
+        publishSessions();
+        if(pending.isEmpty()) return;
+
+        List<String> keys = new ArrayList<>();
+        List<Presence> states = new ArrayList<>();
+        for(String key : new ArrayList<>(pending.keySet())) {
+            Presence state = pending.remove(key);
+            if(state != null) {
+                keys.add(key);
+                states.add(state);
+            }
+        }
+        if(keys.isEmpty()) return;
+
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        try {
+            Set<String> elsewhere = registry.connectedElsewhere(offlineKeys(keys, states));
+            for(int i = 0; i < keys.size(); i++) {
+                Presence state = states.get(i);
+                // The node holding the user's session owns their status row
+                if(!state.online() && elsewhere.contains(keys.get(i))) continue;
+                rows.add(new Object[]{
+                        state.online() ? ONLINE : OFFLINE,
+                        state.lastSeen() != null ? Timestamp.valueOf(state.lastSeen()) : null,
+                        keys.get(i)
+                });
+            }
+
+            if(!rows.isEmpty()) jdbcTemplate.batchUpdate(UPDATE_PRESENCE, rows);
+            log.debug("Flushed presence for {} users", rows.size());
+
+            // Offline users no longer need an in-memory entry once the database has caught up
+            for(int i = 0; i < keys.size(); i++) {
+                if(!states.get(i).online()) presence.remove(keys.get(i), states.get(i));
+            }
+        } catch(Exception e) {
+            log.error("Presence flush of {} users failed, will retry", keys.size(), e);
+            // Put the states back unless a newer transition has already replaced them
+            for(int i = 0; i < keys.size(); i++) {
+                pending.putIfAbsent(keys.get(i), states.get(i));
+            }
+        }
+    }
+
+    private static List<String> offlineKeys(List<String> keys, List<Presence> states) {
+        List<String> offline = new ArrayList<>();
+        for(int i = 0; i < keys.size(); i++) {
+            if(!states.get(i).online()) offline.add(keys.get(i));
+        }
+        return offline;
+    }
+
+    private void publishSessions() {
+        if(unpublished.isEmpty()) return;
+
+        Map<String, Integer> sessions = new HashMap<>();
+        for(String key : new ArrayList<>(unpublished)) {
+            unpublished.remove(key);
+            Presence current = presence.get(key);
+            // A user inside the grace window still counts, so the node they reconnect to stays quiet
+            sessions.put(key, current == null || !current.online() ? 0 : Math.max(current.sessions(), 1));
+        }
+
+        try {
+            registry.publish(sessions);
+        } catch(Exception e) {
+            log.error("Publishing {} session counts to the presence registry failed, will retry", sessions.size(), e);
+            unpublished.addAll(sessions.keySet());
+        }
+    }
+
+    /**
+     * Keeps this node alive in the registry and announces OFFLINE for users whose only sessions were on a node
+     * that stopped heartbeating; nobody else is left to do it.
+     */
+    @Scheduled(fixedDelayString = "${application.chat.presence.heartbeat-ms:5000}")
+    public void heartbeat() {
+        Collection<String> orphaned;
+        try {
+            orphaned = registry.heartbeat();
+        } catch(Exception e) {
+            log.error("Presence registry heartbeat of node {} failed", registry.nodeId(), e);
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for(String key : orphaned) {
+            if(isOnline(key)) continue;
+            pending.put(key, new Presence(0, now, null));
+            eventPublisher.publishEvent(new PresenceChangedEvent(this, new Transition(key, OFFLINE, now)));
+        }
+    }
+
+    /**
+     * Marks everyone still connected as offline on shutdown so the database is not left claiming them online.
+     */
+    @PreDestroy
+    public void shutdown() {
+        LocalDateTime now = LocalDateTime.now();
+        presence.forEach((key, current) -> {
+            if(current.online()) pending.put(key, new Presence(0, now, null));
+        });
+        offlineTimers.close();
+        flush();
+        try {
+            registry.leave();
+        } catch(Exception e) {
+            log.warn("Leaving the presence registry as node {} failed; other nodes will reap it", registry.nodeId(), e);
+        }
+    }
+
+    public record Transition(String userId, String status, LocalDateTime at) {
+    }
+
+    private record Presence(int sessions, LocalDateTime lastSeen, AtomicReference<HashedTimingWheel.Timeout> offlineTimer) {
+        boolean online() {
+            return sessions > 0 || offlineTimer != null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.alfarays.user.service;
+
+import com.alfarays.user.model.UserCard;
+import com.alfarays.user.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves lightweight user cards (name, avatar, presence) for a batch of emails in a single query.
+ * Results are keyed by lower-cased email; presence is taken from the live {@link PresenceStore} when known.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserCardService {
+
+    private final UserRepository userRepository;
+    private final PresenceStore presenceStore;
+
+    @Transactional(readOnly = true)
+    public Map<String, UserCard> byEmails(Collection<String> emails) {
+        if(emails == null || emails.isEmpty()) {
+            return Map.of();
+        }
+
+        Set<String> keys = emails.stream()
+                .filter(email -> email != null && !email.isBlank())
+                .map(UserCardService::key)
+                .collect(Collectors.toSet());
+
+        if(keys.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, UserCard> cards = new HashMap<>();
+        for(UserCard card : userRepository.findCardsByEmails(keys)) {
+            cards.put(key(card.email()), presenceStore.overlay(card));
+        }
+
+        log.debug("Resolved {} of {} user cards", cards.size(), keys.size());
+        return cards;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<UserCard> byEmail(String email) {
+        return Optional.ofNullable(byEmails(Set.of(email)).get(key(email)));
+    }
+
+    public static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
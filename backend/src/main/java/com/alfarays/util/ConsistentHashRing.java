@@ -0,0 +1,76 @@
+package com.alfarays.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring over a set of node ids. Each node is placed at {@code virtualNodes} points,
+ * and a key belongs to the first point at or after its own hash, so adding or removing one of n nodes only
+ * moves the keys that node gains or gives up, about 1/n of them. Build a new ring when membership changes.
+ */
+public final class ConsistentHashRing {
+
+    private final long[] points;
+    private final String[] owners;
+    private final Set<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+        if(virtualNodes < 1) throw new IllegalArgumentException("virtualNodes must be positive");
+
+        this.nodes = Set.copyOf(nodes);
+
+        // Sorted node order makes the rare point collision resolve the same way on every instance
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for(String node : new TreeSet<>(nodes)) {
+            for(int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int i = 0;
+        for(Map.Entry<Long, String> point : ring.entrySet()) {
+            points[i] = point.getKey();
+            owners[i] = point.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * Node owning {@code key}, or {@code null} if the ring is empty.
+     */
+    public String ownerOf(String key) {
+        if(points.length == 0) return null;
+
+        int i = Arrays.binarySearch(points, hash(key));
+        if(i < 0) i = -i - 1;
+        return owners[i == points.length ? 0 : i];
+    }
+
+    public Set<String> nodes() {
+        return nodes;
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, which spreads the nearby hashes of similar ids.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for(byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,22 @@
+package com.alfarays.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CursorPage<T> {
+
+    private List<T> content;
+    private int size;
+    private boolean hasMore;
+    private String nextCursor;
+    private String syncToken;
+
+}
@@ -0,0 +1,153 @@
+package com.alfarays.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Approximate timer for large numbers of short, mostly cancelled timeouts.
+ * Timeouts are hashed into {@code wheelSize} buckets of {@code tickMillis} each and a single worker
+ * thread advances one bucket per tick, so scheduling and cancelling are O(1) and no task is created per
+ * timeout. Expired tasks are handed to {@code executor}; they fire up to one tick late.
+ */
+@Slf4j
+public final class HashedTimingWheel implements AutoCloseable {
+
+    private final long tickNanos;
+    private final List<Timeout>[] wheel;
+    private final int mask;
+    private final Executor executor;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private final Thread worker;
+
+    private volatile boolean running = true;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(String name, long tickMillis, int wheelSize, Executor executor) {
+        if(tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be positive");
+        if(wheelSize <= 0) throw new IllegalArgumentException("wheelSize must be positive");
+
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        if(size <= 0) size = 1;
+
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new List[size];
+        for(int i = 0; i < size; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.executor = executor;
+
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(Math.max(0, delay)));
+        incoming.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) * 2 + 100);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while(running) {
+            if(!awaitNextTick()) break;
+            transferIncoming();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private boolean awaitNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        while(true) {
+            long sleepMillis = TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - startNanos) + 999_999);
+            if(sleepMillis <= 0) return true;
+            try {
+                Thread.sleep(sleepMillis);
+            } catch(InterruptedException e) {
+                if(!running) return false;
+            }
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        while((timeout = incoming.poll()) != null) {
+            if(timeout.state.get() != Timeout.PENDING) continue;
+
+            long due = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (due - tick) / wheel.length;
+            wheel[(int) (Math.max(due, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        while(iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if(timeout.state.get() == Timeout.CANCELLED) {
+                iterator.remove();
+            } else if(timeout.remainingRounds <= 0) {
+                iterator.remove();
+                if(timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                    try {
+                        executor.execute(timeout.task);
+                    } catch(RuntimeException e) {
+                        log.error("Timer task rejected", e);
+                    }
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    public static final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Returns {@code true} if the task will not run; {@code false} if it already fired.
+         */
+        public boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED) || state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
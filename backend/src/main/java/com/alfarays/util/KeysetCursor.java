@@ -0,0 +1,37 @@
+package com.alfarays.util;
+
+import com.alfarays.exceptions.AuthorizationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor over a {@code (timestamp, id)} sort key, e.g. message history or the conversation inbox.
+ */
+public record KeysetCursor(LocalDateTime at, String id) {
+
+    private static final String SEPARATOR = "|";
+
+    public String encode() {
+        String raw = at + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            if(separator <= 0) {
+                throw new AuthorizationException("Invalid cursor: " + cursor);
+            }
+            return new KeysetCursor(
+                    LocalDateTime.parse(raw.substring(0, separator)),
+                    raw.substring(separator + 1)
+            );
+        } catch(IllegalArgumentException | DateTimeParseException e) {
+            throw new AuthorizationException("Invalid cursor: " + cursor);
+        }
+    }
+}
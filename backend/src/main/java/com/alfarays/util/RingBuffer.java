@@ -0,0 +1,117 @@
+package com.alfarays.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Fixed-size, preallocated multi-producer ring of reusable entries.
+ * Producers claim a sequence with {@link #tryNext()}, fill the entry in place and {@link #publish(long)} it;
+ * consumer stages track their own progress in an {@link AtomicLong} and read entries up to the sequence of
+ * the stage before them. A slot is only reused once the gating (last) stage has moved past it.
+ */
+public final class RingBuffer<E> {
+
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Object[] entries;
+    private final int mask;
+    private final int indexShift;
+    private final AtomicIntegerArray published;
+    private final AtomicLong cursor = new AtomicLong(-1);
+    private final WaitStrategy waitStrategy;
+
+    private volatile AtomicLong gatingSequence = new AtomicLong(Long.MAX_VALUE);
+
+    public RingBuffer(int capacity, Supplier<E> factory, WaitStrategy waitStrategy) {
+        if(capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+
+        this.entries = new Object[capacity];
+        for(int i = 0; i < capacity; i++) {
+            entries[i] = factory.get();
+        }
+        this.mask = capacity - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(capacity);
+        this.published = new AtomicIntegerArray(capacity);
+        for(int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Registers the sequence of the last consumer stage; producers never overwrite an entry it has not passed.
+     */
+    public void setGatingSequence(AtomicLong sequence) {
+        this.gatingSequence = sequence;
+    }
+
+    /**
+     * Claims the next sequence, or returns {@code -1} if the ring is full.
+     */
+    public long tryNext() {
+        while(true) {
+            long current = cursor.get();
+            long next = current + 1;
+            if(next - entries.length > gatingSequence.get()) return -1;
+            if(cursor.compareAndSet(current, next)) return next;
+        }
+    }
+
+    /**
+     * Claims the next sequence, parking with a growing backoff while the ring is full,
+     * or returns {@code -1} if no slot was freed within {@code timeout}.
+     */
+    public long next(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long parkNanos = MIN_PARK_NANOS;
+        long sequence;
+        while((sequence = tryNext()) < 0) {
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0) return -1;
+            LockSupport.parkNanos(Math.min(parkNanos, remaining));
+            parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+        }
+        return sequence;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) (sequence & mask)];
+    }
+
+    public void publish(long sequence) {
+        published.set((int) (sequence & mask), (int) (sequence >>> indexShift));
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    /**
+     * Highest sequence in {@code [from, upTo]} such that every sequence up to it has been published,
+     * or {@code from - 1} if {@code from} itself is still being filled.
+     */
+    public long highestPublished(long from, long upTo) {
+        for(long sequence = from; sequence <= upTo; sequence++) {
+            if(published.get((int) (sequence & mask)) != (int) (sequence >>> indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return upTo;
+    }
+
+    public AtomicLong cursor() {
+        return cursor;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    public long backlog() {
+        return cursor.get() - gatingSequence.get();
+    }
+}
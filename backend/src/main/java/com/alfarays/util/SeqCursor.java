@@ -0,0 +1,28 @@
+package com.alfarays.util;
+
+import com.alfarays.exceptions.AuthorizationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursor over a conversation's message sequence numbers, e.g. message history paged by {@code seq}.
+ */
+public record SeqCursor(long seq) {
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(seq).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static SeqCursor decode(String cursor) {
+        try {
+            long seq = Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+            if(seq <= 0) {
+                throw new AuthorizationException("Invalid cursor: " + cursor);
+            }
+            return new SeqCursor(seq);
+        } catch(IllegalArgumentException e) {
+            throw new AuthorizationException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.alfarays.util;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a {@link RingBuffer} consumer waits for the sequence it depends on to advance.
+ * The choice trades latency for CPU: {@code busy-spin} and {@code yielding} burn a core per waiting stage,
+ * {@code sleeping} backs off to short parks, and {@code blocking} parks on a condition until signalled.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until {@code dependent} reaches {@code sequence} or {@code running} turns false,
+     * and returns the last value seen, which may be behind {@code sequence} in the latter case.
+     */
+    default long waitFor(long sequence, AtomicLong dependent, BooleanSupplier running) {
+        long available = dependent.get();
+        if(available >= sequence) return available;
+
+        waitUntil(() -> dependent.get() >= sequence, running);
+        return dependent.get();
+    }
+
+    /**
+     * Waits until {@code ready} holds or {@code running} turns false. Used directly for progress that is not a
+     * single sequence, e.g. a slot that has been claimed but not yet published by its producer.
+     */
+    void waitUntil(BooleanSupplier ready, BooleanSupplier running);
+
+    /**
+     * Wakes up waiters after a sequence they may depend on has advanced.
+     */
+    void signalAllWhenBlocking();
+
+    static WaitStrategy named(String name) {
+        return switch(name.toLowerCase(Locale.ROOT)) {
+            case "blocking" -> new Blocking();
+            case "sleeping" -> new Sleeping();
+            case "yielding" -> new Yielding();
+            case "busy-spin" -> new BusySpin();
+            default -> throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        };
+    }
+
+    final class Blocking implements WaitStrategy {
+
+        private static final long RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition advanced = lock.newCondition();
+        private final AtomicBoolean signalNeeded = new AtomicBoolean();
+
+        @Override
+        public void waitUntil(BooleanSupplier ready, BooleanSupplier running) {
+            if(ready.getAsBoolean()) return;
+
+            lock.lock();
+            try {
+                while(!ready.getAsBoolean() && running.getAsBoolean()) {
+                    signalNeeded.set(true);
+                    // Timed so a missed signal or a shutdown is noticed promptly
+                    advanced.awaitNanos(RECHECK_NANOS);
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+            // Producers only pay for the lock when a consumer is actually parked
+            if(signalNeeded.getAndSet(false)) {
+                lock.lock();
+                try {
+                    advanced.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    final class Sleeping implements WaitStrategy {
+
+        private static final int SPINS = 100;
+        private static final int YIELDS = 100;
+        private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+        @Override
+        public void waitUntil(BooleanSupplier ready, BooleanSupplier running) {
+            int counter = SPINS + YIELDS;
+            while(!ready.getAsBoolean() && running.getAsBoolean()) {
+                if(counter > YIELDS) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else if(counter > 0) {
+                    counter--;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+
+        private static final int SPINS = 100;
+
+        @Override
+        public void waitUntil(BooleanSupplier ready, BooleanSupplier running) {
+            int counter = SPINS;
+            while(!ready.getAsBoolean() && running.getAsBoolean()) {
+                if(counter > 0) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+
+        @Override
+        public void waitUntil(BooleanSupplier ready, BooleanSupplier running) {
+            while(!ready.getAsBoolean() && running.getAsBoolean()) {
+                Thread.onSpinWait();
+            }
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+        }
+    }
+}
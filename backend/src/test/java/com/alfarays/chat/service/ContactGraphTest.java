@@ -0,0 +1,69 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.ConversationPartner;
+import com.alfarays.chat.repository.ConversationRepository;
+import com.alfarays.user.service.PresenceStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContactGraphTest {
+
+    private static final String ALICE = "alice@example.com";
+
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+
+    @Test
+    void memoryStoreServesPartnersFromTheCache() throws InterruptedException {
+        when(conversationRepository.findActivePartners(ALICE)).thenReturn(
+                List.of(new ConversationPartner("conversation-1", "bob@example.com")),
+                List.of(new ConversationPartner("conversation-1", "bob@example.com"),
+                        new ConversationPartner("conversation-2", "carol@example.com")));
+        ContactGraph contactGraph = contactGraph(1, "memory");
+
+        assertThat(contactGraph.partnersOf(ALICE)).containsExactly("bob@example.com");
+        Thread.sleep(20);
+
+        assertThat(contactGraph.partnersOf(ALICE)).containsExactly("bob@example.com");
+        verify(conversationRepository, times(1)).findActivePartners(ALICE);
+    }
+
+    @Test
+    void databaseStoreReloadsToSeeConversationsCreatedOnAnotherInstance() throws InterruptedException {
+        when(conversationRepository.findActivePartners(ALICE)).thenReturn(
+                List.of(new ConversationPartner("conversation-1", "bob@example.com")),
+                List.of(new ConversationPartner("conversation-1", "bob@example.com"),
+                        new ConversationPartner("conversation-2", "carol@example.com")));
+        ContactGraph contactGraph = contactGraph(1, "database");
+
+        assertThat(contactGraph.partnersOf(ALICE)).containsExactly("bob@example.com");
+        Thread.sleep(20);
+
+        assertThat(contactGraph.partnersOf(ALICE)).containsExactlyInAnyOrder("bob@example.com", "carol@example.com");
+        verify(conversationRepository, times(2)).findActivePartners(ALICE);
+    }
+
+    @Test
+    void databaseStoreReusesAFreshEntry() {
+        when(conversationRepository.findActivePartners(ALICE))
+                .thenReturn(List.of(new ConversationPartner("conversation-1", "bob@example.com")));
+        ContactGraph contactGraph = contactGraph(60_000, "database");
+
+        contactGraph.partnersOf(ALICE);
+        assertThat(contactGraph.partnerIn(ALICE, "conversation-1")).contains("bob@example.com");
+
+        verify(conversationRepository, times(1)).findActivePartners(ALICE);
+    }
+
+    private ContactGraph contactGraph(long sharedTtlMillis, String stateStore) {
+        return new ContactGraph(900_000, sharedTtlMillis, stateStore, conversationRepository, mock(PresenceStore.class),
+                new SimpleMeterRegistry());
+    }
+}
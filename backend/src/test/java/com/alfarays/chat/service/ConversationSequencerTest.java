@@ -0,0 +1,208 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConversationSequencerTest {
+
+    private static final String CONVERSATION = "conversation-1";
+
+    private final MessageRepository messageRepository = mock(MessageRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+
+    @AfterEach
+    void tearDown() {
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void continuesFromTheStoredMaximum() {
+        when(messageRepository.findMaxSeq(CONVERSATION)).thenReturn(41L);
+        ConversationSequencer sequencer = sequencer(900_000);
+
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(42);
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(43);
+        verify(messageRepository, times(1)).findMaxSeq(CONVERSATION);
+    }
+
+    @Test
+    void stableSeqStaysBelowASendThatHasNotCompleted() {
+        ConversationSequencer sequencer = sequencer(900_000);
+
+        List<TransactionSynchronization> first = inTransaction(() -> sequencer.next(CONVERSATION));
+        List<TransactionSynchronization> second = inTransaction(() -> sequencer.next(CONVERSATION));
+
+        // The later send commits first; a sync must not move past the earlier one still in flight
+        complete(second, TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(sequencer.stableSeq(CONVERSATION)).isZero();
+
+        complete(first, TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(sequencer.stableSeq(CONVERSATION)).isEqualTo(2);
+    }
+
+    @Test
+    void rollbackWithNothingElseInFlightReseedsFromTheDatabase() {
+        when(messageRepository.findMaxSeq(CONVERSATION)).thenReturn(5L);
+        ConversationSequencer sequencer = sequencer(900_000);
+
+        List<TransactionSynchronization> rolledBack = inTransaction(() -> sequencer.next(CONVERSATION));
+        complete(rolledBack, TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(6);
+        verify(messageRepository, times(2)).findMaxSeq(CONVERSATION);
+    }
+
+    @Test
+    void idleCountersAreEvictedAndReseeded() {
+        when(messageRepository.findMaxSeq(CONVERSATION)).thenReturn(0L, 1L);
+        ConversationSequencer sequencer = sequencer(-1);
+
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(1);
+        sequencer.evictIdle();
+
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(2);
+        verify(messageRepository, times(2)).findMaxSeq(CONVERSATION);
+    }
+
+    @Test
+    void retryReusesANumberGivenBackWhileOtherSendsWereInFlight() {
+        ConversationSequencer sequencer = sequencer(900_000);
+
+        List<TransactionSynchronization> first = inTransaction(() -> sequencer.next(CONVERSATION));
+        List<TransactionSynchronization> second = inTransaction(() -> sequencer.next(CONVERSATION));
+        complete(first, TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(sequencer.reuse(CONVERSATION, 1)).isEqualTo(1);
+        complete(second, TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(3);
+        assertThat(sequencer.stableSeq(CONVERSATION)).isEqualTo(3);
+    }
+
+    @Test
+    void retryGetsANewNumberOnceItsOldOneWasTakenAgain() {
+        ConversationSequencer sequencer = sequencer(900_000);
+
+        // Nothing else in flight: the counter is dropped and the next send is numbered 1 again
+        List<TransactionSynchronization> rolledBack = inTransaction(() -> sequencer.next(CONVERSATION));
+        complete(rolledBack, TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(1);
+
+        assertThat(sequencer.reuse(CONVERSATION, 1)).isEqualTo(2);
+    }
+
+    @Test
+    void retryAfterTheCounterWasDroppedKeepsItsNumber() {
+        ConversationSequencer sequencer = sequencer(900_000);
+
+        List<TransactionSynchronization> rolledBack = inTransaction(() -> sequencer.next(CONVERSATION));
+        complete(rolledBack, TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(sequencer.reuse(CONVERSATION, 1)).isEqualTo(1);
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(2);
+    }
+
+    @Test
+    void databaseStoreReclaimsANumberNobodyHasTakenSince() {
+        when(jdbcTemplate.update(anyString(), eq(4L), eq(CONVERSATION), eq(4L))).thenReturn(1);
+        ConversationSequencer sequencer = new ConversationSequencer(900_000, "database", messageRepository, jdbcTemplate,
+                new SimpleMeterRegistry());
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        assertThat(sequencer.reuse(CONVERSATION, 4)).isEqualTo(4);
+        verify(jdbcTemplate, never()).update(anyString(), eq(CONVERSATION));
+    }
+
+    @Test
+    void databaseStoreAllocatesAfreshOnceTheNumberWasTaken() {
+        when(jdbcTemplate.update(anyString(), eq(4L), eq(CONVERSATION), eq(4L))).thenReturn(0);
+        when(jdbcTemplate.update(anyString(), eq(CONVERSATION))).thenReturn(1);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(6L);
+        ConversationSequencer sequencer = new ConversationSequencer(900_000, "database", messageRepository, jdbcTemplate,
+                new SimpleMeterRegistry());
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        assertThat(sequencer.reuse(CONVERSATION, 4)).isEqualTo(6);
+    }
+
+    @Test
+    void stableSeqOfAConversationNotInMemoryComesFromTheDatabase() {
+        when(messageRepository.findMaxSeq(CONVERSATION)).thenReturn(17L);
+
+        assertThat(sequencer(900_000).stableSeq(CONVERSATION)).isEqualTo(17);
+    }
+
+    @Test
+    void databaseStoreTakesNumbersFromTheConversationRow() {
+        when(jdbcTemplate.update(anyString(), eq(CONVERSATION))).thenReturn(1);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(8L, 9L);
+        when(messageRepository.findMaxSeq(CONVERSATION)).thenReturn(9L);
+        ConversationSequencer sequencer = new ConversationSequencer(900_000, "database", messageRepository, jdbcTemplate,
+                new SimpleMeterRegistry());
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(8);
+        assertThat(sequencer.next(CONVERSATION)).isEqualTo(9);
+        verify(jdbcTemplate, times(2)).update(anyString(), eq(CONVERSATION));
+
+        // The row lock orders commits, so what has committed is always stable
+        assertThat(sequencer.stableSeq(CONVERSATION)).isEqualTo(9);
+    }
+
+    @Test
+    void databaseStoreFailsForAnUnknownConversation() {
+        ConversationSequencer sequencer = new ConversationSequencer(900_000, "database", messageRepository, jdbcTemplate,
+                new SimpleMeterRegistry());
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        assertThatThrownBy(() -> sequencer.next(CONVERSATION)).isInstanceOf(IllegalStateException.class);
+        verify(jdbcTemplate, never()).queryForObject(anyString(), eq(Long.class));
+    }
+
+    @Test
+    void databaseStoreRefusesToNumberOutsideATransaction() {
+        ConversationSequencer sequencer = new ConversationSequencer(900_000, "database", messageRepository, jdbcTemplate,
+                new SimpleMeterRegistry());
+
+        assertThatThrownBy(() -> sequencer.next(CONVERSATION)).isInstanceOf(IllegalStateException.class);
+        verify(jdbcTemplate, never()).update(anyString(), eq(CONVERSATION));
+    }
+
+    private ConversationSequencer sequencer(long idleMillis) {
+        return new ConversationSequencer(idleMillis, "memory", messageRepository, jdbcTemplate, new SimpleMeterRegistry());
+    }
+
+    private static List<TransactionSynchronization> inTransaction(LongSupplier work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.getAsLong();
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void complete(List<TransactionSynchronization> synchronizations, int status) {
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -0,0 +1,80 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.entity.Conversation;
+import com.alfarays.chat.model.ConversationResponse;
+import com.alfarays.chat.repository.ConversationRepository;
+import com.alfarays.user.model.UserCard;
+import com.alfarays.user.service.UserCardService;
+import com.alfarays.util.CursorPage;
+import com.alfarays.util.KeysetCursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConversationServiceTest {
+
+    private static final String ALICE = "alice@example.com";
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 6, 1, 12, 0);
+
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private final UserCardService userCardService = mock(UserCardService.class);
+    private final ConversationService conversationService = new ConversationService(conversationRepository,
+            mock(IMessageService.class), userCardService, mock(ContactGraph.class));
+
+    @Test
+    void inboxPagesContinuePastAConversationWithoutLastMessageAt() {
+        Conversation recent = conversation("conversation-3", "bob@example.com", NOW.minusDays(5), NOW);
+        // Written by an instance that predates the column and not backfilled yet
+        Conversation legacy = conversation("conversation-2", "carol@example.com", NOW.minusDays(2), null);
+        Conversation older = conversation("conversation-1", "dave@example.com", NOW.minusDays(9), NOW.minusDays(3));
+
+        PageRequest page = PageRequest.of(0, 2);
+        when(conversationRepository.findUserConversationsLatest(eq(ALICE), isNull(), eq(page)))
+                .thenReturn(new SliceImpl<>(List.of(recent, legacy), page, true));
+        when(conversationRepository.findUserConversationsBefore(ALICE, null, NOW.minusDays(2), "conversation-2", page))
+                .thenReturn(new SliceImpl<>(List.of(older), page, false));
+        when(userCardService.byEmails(any())).thenReturn(Map.of(
+                "bob@example.com", card("bob@example.com"),
+                "carol@example.com", card("carol@example.com"),
+                "dave@example.com", card("dave@example.com")));
+
+        CursorPage<ConversationResponse> first = conversationService.getInboxPage(ALICE, null, 2, null).getData();
+
+        assertThat(first.getContent()).extracting(ConversationResponse::getId).containsExactly("conversation-3", "conversation-2");
+        assertThat(first.isHasMore()).isTrue();
+        // The cursor falls back to the creation time, which the keyset query sorts the row on as well
+        assertThat(KeysetCursor.decode(first.getNextCursor())).isEqualTo(new KeysetCursor(NOW.minusDays(2), "conversation-2"));
+
+        CursorPage<ConversationResponse> second = conversationService.getInboxPage(ALICE, first.getNextCursor(), 2, null).getData();
+
+        assertThat(second.getContent()).extracting(ConversationResponse::getId).containsExactly("conversation-1");
+        assertThat(second.isHasMore()).isFalse();
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    private static Conversation conversation(String id, String partner, LocalDateTime createdAt, LocalDateTime lastMessageAt) {
+        return Conversation.builder()
+                .id(id)
+                .initiator(ALICE)
+                .participant(partner)
+                .createdAt(createdAt)
+                .lastMessageAt(lastMessageAt)
+                .isActive(true)
+                .build();
+    }
+
+    private static UserCard card(String email) {
+        return new UserCard(email, "first", "last", null, "ONLINE", NOW, NOW);
+    }
+}
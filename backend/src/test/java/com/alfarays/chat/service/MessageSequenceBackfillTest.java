@@ -0,0 +1,91 @@
+package com.alfarays.chat.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageSequenceBackfillTest {
+
+    private static final String CONVERSATION = "conversation-1";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final MessageSequenceBackfill backfill = new MessageSequenceBackfill(jdbcTemplate, transactionTemplate);
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> work = invocation.getArgument(0);
+            work.accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void numbersOnlyUnnumberedRowsAfterTheHighestNumberUnderTheConversationLock() {
+        when(jdbcTemplate.queryForList(contains("seq IS NULL"), eq(String.class))).thenReturn(List.of(CONVERSATION));
+        when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(Long.class), eq(CONVERSATION))).thenReturn(List.of(12L));
+        when(jdbcTemplate.queryForObject(contains("MAX(seq)"), eq(Long.class), eq(CONVERSATION))).thenReturn(9L);
+        when(jdbcTemplate.update(contains("ROW_NUMBER()"), eq(CONVERSATION), eq(12L))).thenReturn(3);
+
+        backfill.backfill();
+
+        // Rows that already have a number are never touched, so seqs clients synced on stay put
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).queryForList(contains("FOR UPDATE"), eq(Long.class), eq(CONVERSATION));
+        order.verify(jdbcTemplate).update(contains("ROW_NUMBER()"), eq(CONVERSATION), eq(12L));
+        order.verify(jdbcTemplate).update(contains("last_message_seq"), eq(CONVERSATION));
+        verify(jdbcTemplate, never()).update(contains("-seq"), anyString());
+    }
+
+    @Test
+    void continuesAfterTheStoredMaximumWhenItIsAheadOfTheSummary() {
+        when(jdbcTemplate.queryForList(contains("seq IS NULL"), eq(String.class))).thenReturn(List.of(CONVERSATION));
+        when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(Long.class), eq(CONVERSATION))).thenReturn(List.of(0L));
+        when(jdbcTemplate.queryForObject(contains("MAX(seq)"), eq(Long.class), eq(CONVERSATION))).thenReturn(40L);
+
+        backfill.backfill();
+
+        verify(jdbcTemplate).update(contains("ROW_NUMBER()"), eq(CONVERSATION), eq(40L));
+    }
+
+    @Test
+    void leavesTheSummaryAloneWhenAnotherInstanceNumberedTheRowsFirst() {
+        when(jdbcTemplate.queryForList(contains("seq IS NULL"), eq(String.class))).thenReturn(List.of(CONVERSATION));
+        when(jdbcTemplate.queryForList(contains("FOR UPDATE"), eq(Long.class), eq(CONVERSATION))).thenReturn(List.of(7L));
+        when(jdbcTemplate.queryForObject(contains("MAX(seq)"), eq(Long.class), eq(CONVERSATION))).thenReturn(7L);
+        when(jdbcTemplate.update(contains("ROW_NUMBER()"), eq(CONVERSATION), eq(7L))).thenReturn(0);
+
+        backfill.backfill();
+
+        verify(jdbcTemplate, never()).update(contains("last_message_seq"), eq(CONVERSATION));
+    }
+
+    @Test
+    void doesNothingWhenEveryMessageIsNumbered() {
+        when(jdbcTemplate.queryForList(contains("seq IS NULL"), eq(String.class))).thenReturn(List.of());
+
+        backfill.backfill();
+
+        verify(transactionTemplate, never()).executeWithoutResult(any());
+        verify(jdbcTemplate, never()).update(anyString(), anyString(), anyLong());
+    }
+}
@@ -0,0 +1,185 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.entity.Conversation;
+import com.alfarays.chat.model.ChatError;
+import com.alfarays.chat.model.MessageResponse;
+import com.alfarays.chat.repository.ConversationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MessageWriteBehindPipelineTest {
+
+    private static final String CONVERSATION = "conversation-1";
+    private static final String SENDER = "alice@example.com";
+    private static final String RECEIVER = "bob@example.com";
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+    private final ConversationSummaryService conversationSummaryService = mock(ConversationSummaryService.class);
+    private final ConversationSequencer conversationSequencer = mock(ConversationSequencer.class);
+    private final MessageTailCache messageTailCache = mock(MessageTailCache.class);
+    private final SendDeduplicator sendDeduplicator = mock(SendDeduplicator.class);
+    private final UnreadCounterStore unreadCounterStore = mock(UnreadCounterStore.class);
+    private final WebSocketService webSocketService = mock(WebSocketService.class);
+
+    private final CountDownLatch persistEntered = new CountDownLatch(1);
+    private CountDownLatch persistReleased = new CountDownLatch(0);
+    private MessageWriteBehindPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        Conversation conversation = Conversation.builder().id(CONVERSATION).initiator(SENDER).participant(RECEIVER).build();
+        when(conversationRepository.findAllById(any())).thenReturn(List.of(conversation));
+
+        AtomicLong seq = new AtomicLong();
+        when(conversationSequencer.next(CONVERSATION)).thenAnswer(invocation -> seq.incrementAndGet());
+        when(unreadCounterStore.add(anyString(), anyString(), anyInt())).thenReturn(1L);
+
+        doAnswer(invocation -> {
+            persistEntered.countDown();
+            persistReleased.await(5, TimeUnit.SECONDS);
+            Consumer<TransactionStatus> work = invocation.getArgument(0);
+            work.accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        persistReleased.countDown();
+        if(pipeline != null) pipeline.stop();
+    }
+
+    @Test
+    void deliversAcceptedMessagesInSubmissionOrder() {
+        start(16, 200);
+
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "one", "c-1")).isTrue();
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "two", "c-2")).isTrue();
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "three", "c-3")).isTrue();
+
+        ArgumentCaptor<MessageResponse> delivered = ArgumentCaptor.forClass(MessageResponse.class);
+        verify(webSocketService, timeout(5000).times(3)).deliverPrivateMessage(delivered.capture(), eq(RECEIVER), anyLong());
+        assertThat(delivered.getAllValues()).extracting(MessageResponse::getContent).containsExactly("one", "two", "three");
+        assertThat(delivered.getAllValues()).extracting(MessageResponse::getSeq).containsExactly(1L, 2L, 3L);
+        verify(sendDeduplicator, times(3)).remember(eq(SENDER), any(MessageResponse.class));
+    }
+
+    @Test
+    void acceptsARetryOfAnInFlightSendWithoutASecondSlot() throws InterruptedException {
+        persistReleased = new CountDownLatch(1);
+        start(16, 200);
+
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "hello", "c-1")).isTrue();
+        assertThat(persistEntered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The original is being written; its retry is answered by the original's fan-out
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "hello", "c-1")).isTrue();
+        persistReleased.countDown();
+
+        verify(webSocketService, timeout(5000)).deliverPrivateMessage(any(MessageResponse.class), eq(RECEIVER), anyLong());
+        pipeline.stop();
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+        verify(webSocketService, times(1)).deliverPrivateMessage(any(MessageResponse.class), eq(RECEIVER), anyLong());
+    }
+
+    @Test
+    void fullRingAppliesBackpressureAndRejectsOnceTheTimeoutPasses() throws InterruptedException {
+        persistReleased = new CountDownLatch(1);
+        start(2, 200);
+
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "one", "c-1")).isTrue();
+        assertThat(persistEntered.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "two", "c-2")).isTrue();
+
+        // Both slots are held until fan-out releases them
+        long started = System.nanoTime();
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "three", "c-3")).isFalse();
+        assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+
+        persistReleased.countDown();
+        verify(webSocketService, timeout(5000).times(2)).deliverPrivateMessage(any(MessageResponse.class), eq(RECEIVER), anyLong());
+
+        // A rejected send can be resent under the same id once there is room again
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "three", "c-3")).isTrue();
+        verify(webSocketService, timeout(5000).times(3)).deliverPrivateMessage(any(MessageResponse.class), eq(RECEIVER), anyLong());
+    }
+
+    @Test
+    void stopWritesEverythingAcceptedAndRefusesNewSends() throws InterruptedException {
+        start(16, 200);
+        for(int i = 0; i < 5; i++) {
+            assertThat(pipeline.submit(CONVERSATION, SENDER, "message " + i, "c-" + i)).isTrue();
+        }
+
+        pipeline.stop();
+
+        verify(webSocketService, times(5)).deliverPrivateMessage(any(MessageResponse.class), eq(RECEIVER), anyLong());
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "late", "c-late")).isFalse();
+    }
+
+    @Test
+    void tellsTheSenderWhenAMessageCannotBeWritten() {
+        start(16, 200);
+
+        // Unknown conversation, and one the sender is not a member of
+        assertThat(pipeline.submit("conversation-2", SENDER, "hello", "c-1")).isTrue();
+        assertThat(pipeline.submit(CONVERSATION, "mallory@example.com", "hello", "c-2")).isTrue();
+
+        ArgumentCaptor<ChatError> errors = ArgumentCaptor.forClass(ChatError.class);
+        verify(webSocketService, timeout(5000)).sendError(eq(SENDER), errors.capture());
+        verify(webSocketService, timeout(5000)).sendError(eq("mallory@example.com"), errors.capture());
+        assertThat(errors.getAllValues()).extracting(ChatError::getClientMessageId).containsExactly("c-1", "c-2");
+        assertThat(errors.getAllValues()).extracting(ChatError::getMessage).containsOnly("No conversation exists");
+        verify(webSocketService, never()).deliverPrivateMessage(any(MessageResponse.class), anyString(), anyLong());
+    }
+
+    @Test
+    void retriesAFailedBatchWithTheSequenceNumbersItWasGiven() {
+        when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class)))
+                .thenThrow(new DataAccessResourceFailureException("connection lost"));
+        start(16, 200);
+
+        assertThat(pipeline.submit(CONVERSATION, SENDER, "hello", "c-1")).isTrue();
+
+        verify(webSocketService, timeout(5000)).resendPrivateMessage(CONVERSATION, SENDER, "hello", "c-1", 1L);
+        verify(webSocketService, never()).sendPrivateMessage(anyString(), anyString(), anyString(), anyString());
+    }
+
+    private void start(int ringSize, long submitTimeoutMillis) {
+        pipeline = new MessageWriteBehindPipeline(true, ringSize, 16, "blocking", submitTimeoutMillis,
+                jdbcTemplate, transactionTemplate, conversationRepository, conversationSummaryService,
+                conversationSequencer, messageTailCache, sendDeduplicator, unreadCounterStore, webSocketService,
+                new SimpleMeterRegistry());
+        pipeline.start();
+    }
+}
@@ -0,0 +1,66 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.model.MessageResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SendDeduplicatorTest {
+
+    private static final String SENDER = "alice@example.com";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void recallsARememberedSendBySenderAndClientMessageId() {
+        SendDeduplicator deduplicator = new SendDeduplicator(16, 600_000, meterRegistry);
+        MessageResponse original = response("c-1");
+
+        deduplicator.remember(SENDER, original);
+
+        assertThat(deduplicator.recall(SENDER, "c-1")).containsSame(original);
+        assertThat(deduplicator.recall(SENDER, "c-2")).isEmpty();
+        assertThat(deduplicator.recall("bob@example.com", "c-1")).isEmpty();
+        assertThat(meterRegistry.counter("chat.send.duplicates").count()).isEqualTo(1);
+    }
+
+    @Test
+    void sendsWithoutAClientMessageIdAreNeverDeduplicated() {
+        SendDeduplicator deduplicator = new SendDeduplicator(16, 600_000, meterRegistry);
+
+        deduplicator.remember(SENDER, response(null));
+
+        assertThat(deduplicator.recall(SENDER, null)).isEmpty();
+        assertThat(meterRegistry.get("chat.dedup.senders").gauge().value()).isZero();
+    }
+
+    @Test
+    void keepsOnlyTheLatestSendsOfEachSender() {
+        SendDeduplicator deduplicator = new SendDeduplicator(2, 600_000, meterRegistry);
+
+        deduplicator.remember(SENDER, response("c-1"));
+        deduplicator.remember(SENDER, response("c-2"));
+        deduplicator.remember(SENDER, response("c-3"));
+
+        assertThat(deduplicator.recall(SENDER, "c-1")).isEmpty();
+        assertThat(deduplicator.recall(SENDER, "c-2")).isPresent();
+        assertThat(deduplicator.recall(SENDER, "c-3")).isPresent();
+    }
+
+    @Test
+    void forgetsSendsOlderThanTheWindow() throws InterruptedException {
+        SendDeduplicator deduplicator = new SendDeduplicator(16, 20, meterRegistry);
+        deduplicator.remember(SENDER, response("c-1"));
+
+        Thread.sleep(50);
+
+        assertThat(deduplicator.recall(SENDER, "c-1")).isEmpty();
+        deduplicator.evictExpired();
+        assertThat(meterRegistry.get("chat.dedup.senders").gauge().value()).isZero();
+    }
+
+    private static MessageResponse response(String clientMessageId) {
+        return MessageResponse.builder().id("message-" + clientMessageId).senderId(SENDER).clientMessageId(clientMessageId).build();
+    }
+}
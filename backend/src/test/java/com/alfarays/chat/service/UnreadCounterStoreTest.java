@@ -0,0 +1,123 @@
+package com.alfarays.chat.service;
+
+import com.alfarays.chat.entity.Conversation;
+import com.alfarays.chat.repository.ConversationRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UnreadCounterStoreTest {
+
+    private static final String CONVERSATION = "conversation-1";
+    private static final String INITIATOR = "alice@example.com";
+    private static final String PARTICIPANT = "bob@example.com";
+
+    private final ConversationRepository conversationRepository = mock(ConversationRepository.class);
+
+    @Test
+    void seedsOnceFromTheConversationRow() {
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.of(4));
+        UnreadCounterStore store = store(900_000, "memory");
+
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(4);
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(4);
+        verify(conversationRepository, times(1)).findUnreadCount(CONVERSATION, PARTICIPANT);
+    }
+
+    @Test
+    void unknownConversationCountsAsNothingUnread() {
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.empty());
+
+        assertThat(store(900_000, "memory").get(CONVERSATION, PARTICIPANT)).isZero();
+    }
+
+    @Test
+    void addMovesASeededCounterWithoutReadingTheRowAgain() {
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.of(2));
+        UnreadCounterStore store = store(900_000, "memory");
+
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(2);
+        assertThat(store.add(CONVERSATION, PARTICIPANT, 3)).isEqualTo(5);
+        assertThat(store.increment(CONVERSATION, PARTICIPANT)).isEqualTo(6);
+        verify(conversationRepository, times(1)).findUnreadCount(CONVERSATION, PARTICIPANT);
+    }
+
+    @Test
+    void addToAnUnseededCounterTakesTheCommittedRow() {
+        // The row already includes the committed messages, so they are not counted a second time
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.of(3));
+
+        assertThat(store(900_000, "memory").add(CONVERSATION, PARTICIPANT, 3)).isEqualTo(3);
+    }
+
+    @Test
+    void resetClearsTheBadge() {
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.of(7));
+        UnreadCounterStore store = store(900_000, "memory");
+
+        store.reset(CONVERSATION, PARTICIPANT);
+
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isZero();
+        assertThat(store.increment(CONVERSATION, PARTICIPANT)).isEqualTo(1);
+    }
+
+    @Test
+    void reconcileRealignsADriftedCounterWithTheRow() {
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.of(1));
+        when(conversationRepository.findAllById(any())).thenReturn(List.of(conversation(0, 4)));
+        UnreadCounterStore store = store(900_000, "memory");
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(1);
+
+        store.reconcile();
+
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(4);
+    }
+
+    @Test
+    void reconcileDropsIdleCounters() {
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.of(1), Optional.of(2));
+        UnreadCounterStore store = store(-1, "memory");
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(1);
+
+        store.reconcile();
+
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(2);
+        verify(conversationRepository, times(2)).findUnreadCount(CONVERSATION, PARTICIPANT);
+    }
+
+    @Test
+    void databaseStoreAlwaysReadsTheRow() {
+        when(conversationRepository.findUnreadCount(CONVERSATION, PARTICIPANT)).thenReturn(Optional.of(1), Optional.of(3), Optional.of(0));
+        UnreadCounterStore store = store(900_000, "database");
+
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isEqualTo(1);
+        // Another instance committed two sends in the meantime
+        assertThat(store.add(CONVERSATION, PARTICIPANT, 1)).isEqualTo(3);
+        store.reset(CONVERSATION, PARTICIPANT);
+        assertThat(store.get(CONVERSATION, PARTICIPANT)).isZero();
+        verify(conversationRepository, times(3)).findUnreadCount(CONVERSATION, PARTICIPANT);
+    }
+
+    private UnreadCounterStore store(long idleMillis, String stateStore) {
+        return new UnreadCounterStore(idleMillis, 50_000, stateStore, conversationRepository, new SimpleMeterRegistry());
+    }
+
+    private static Conversation conversation(int initiatorUnread, int participantUnread) {
+        return Conversation.builder()
+                .id(CONVERSATION)
+                .initiator(INITIATOR)
+                .participant(PARTICIPANT)
+                .initiatorUnreadCount(initiatorUnread)
+                .participantUnreadCount(participantUnread)
+                .build();
+    }
+}
@@ -0,0 +1,67 @@
+package com.alfarays.shared;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimeOrderedIdGeneratorTest {
+
+    @Test
+    void producesVersion7UuidsWithTheRfcVariant() {
+        UUID id = UUID.fromString(TimeOrderedIdGenerator.nextId());
+
+        assertThat(id.version()).isEqualTo(7);
+        assertThat(id.variant()).isEqualTo(2);
+    }
+
+    @Test
+    void embedsTheCurrentUnixMillis() {
+        long before = System.currentTimeMillis();
+        UUID id = UUID.fromString(TimeOrderedIdGenerator.nextId());
+        long after = System.currentTimeMillis();
+
+        // A burst from another test may have left the counter borrowing a few milliseconds ahead
+        assertThat(id.getMostSignificantBits() >>> 16).isBetween(before, after + 1_000);
+    }
+
+    @Test
+    void idsIssuedInABurstAreStrictlyIncreasingAsStrings() {
+        // Tens of thousands of ids span only a few milliseconds, so most share one with their neighbours
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < 50_000; i++) {
+            ids.add(TimeOrderedIdGenerator.nextId());
+        }
+
+        for(int i = 1; i < ids.size(); i++) {
+            assertThat(ids.get(i)).isGreaterThan(ids.get(i - 1));
+        }
+    }
+
+    @Test
+    void concurrentCallersNeverReceiveTheSameId() throws InterruptedException {
+        int threads = 8;
+        int perThread = 5_000;
+        ConcurrentLinkedQueue<String> ids = new ConcurrentLinkedQueue<>();
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for(int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for(int i = 0; i < perThread; i++) {
+                    ids.add(TimeOrderedIdGenerator.nextId());
+                }
+                done.countDown();
+            }).start();
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(new HashSet<>(ids)).hasSize(threads * perThread);
+    }
+}
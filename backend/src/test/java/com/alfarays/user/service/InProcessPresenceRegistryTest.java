@@ -0,0 +1,40 @@
+package com.alfarays.user.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InProcessPresenceRegistryTest {
+
+    private final InProcessPresenceRegistry registry = new InProcessPresenceRegistry();
+
+    @Test
+    void offersItselfAsTheOnlyNode() {
+        assertThat(registry.liveNodes()).containsExactly(Map.entry("local", ""));
+    }
+
+    @Test
+    void drainingWithdrawsTheNodeFromNewSessions() {
+        registry.drain();
+
+        assertThat(registry.liveNodes()).isEmpty();
+    }
+
+    @Test
+    void publishedSessionsAreNeverConnectedElsewhere() {
+        registry.publish(Map.of("alice", 2));
+
+        assertThat(registry.connectedElsewhere(List.of("alice", "bob"))).isEmpty();
+        assertThat(registry.connectedElsewhere("alice")).isFalse();
+    }
+
+    @Test
+    void heartbeatNeverOrphansAnyone() {
+        registry.publish(Map.of("alice", 1));
+
+        assertThat(registry.heartbeat()).isEmpty();
+    }
+}
@@ -0,0 +1,260 @@
+package com.alfarays.user.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JdbcPresenceRegistryTest {
+
+    private static final long TTL_MILLIS = 1_000;
+
+    private final PresenceTables tables = new PresenceTables();
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(mock(TransactionStatus.class)))
+                .when(transactionTemplate).execute(any());
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void sessionPublishedOnOneNodeIsConnectedElsewhereForTheOthers() {
+        JdbcPresenceRegistry first = join("first", "");
+        JdbcPresenceRegistry second = join("second", "");
+
+        first.publish(Map.of("alice", 2));
+
+        assertThat(second.connectedElsewhere(List.of("alice", "bob"))).containsExactly("alice");
+        assertThat(first.connectedElsewhere("alice")).isFalse();
+    }
+
+    @Test
+    void countOfZeroWithdrawsTheSession() {
+        JdbcPresenceRegistry first = join("first", "");
+        JdbcPresenceRegistry second = join("second", "");
+
+        first.publish(Map.of("alice", 1));
+        first.publish(Map.of("alice", 0));
+
+        assertThat(second.connectedElsewhere("alice")).isFalse();
+    }
+
+    @Test
+    void liveNodesCarryTheirAdvertisedUrl() {
+        JdbcPresenceRegistry first = join("first", "https://first.example.com");
+        JdbcPresenceRegistry second = join("second", "");
+
+        assertThat(second.liveNodes()).containsOnly(
+                Map.entry(first.nodeId(), "https://first.example.com"),
+                Map.entry(second.nodeId(), ""));
+    }
+
+    @Test
+    void nodeMissingItsHeartbeatsIsPrunedAndItsOnlyUsersReportedOnce() {
+        JdbcPresenceRegistry dead = join("dead", "");
+        JdbcPresenceRegistry reaper = join("reaper", "");
+        JdbcPresenceRegistry survivor = join("survivor", "");
+        dead.publish(Map.of("alice", 1, "bob", 1));
+        survivor.publish(Map.of("bob", 1));
+
+        tables.now += 600;
+        survivor.heartbeat();
+        tables.now += 600;
+
+        // bob still holds a session on the survivor, so only alice went offline with the dead node
+        assertThat(reaper.liveNodes()).doesNotContainKey(dead.nodeId());
+        assertThat(reaper.heartbeat()).containsExactly("alice");
+        assertThat(survivor.heartbeat()).isEmpty();
+        assertThat(reaper.connectedElsewhere(List.of("alice", "bob"))).containsExactly("bob");
+    }
+
+    @Test
+    void reapedNodeRejoinsWithEverythingItPublished() {
+        JdbcPresenceRegistry paused = join("paused", "");
+        JdbcPresenceRegistry reaper = join("reaper", "");
+        paused.publish(Map.of("alice", 1));
+
+        tables.now += 1_500;
+        reaper.heartbeat();
+        assertThat(reaper.connectedElsewhere("alice")).isFalse();
+
+        paused.heartbeat();
+
+        assertThat(reaper.liveNodes()).containsKey(paused.nodeId());
+        assertThat(reaper.connectedElsewhere("alice")).isTrue();
+    }
+
+    @Test
+    void drainingNodeIsNotOfferedButItsSessionsStillCount() {
+        JdbcPresenceRegistry draining = join("draining", "");
+        JdbcPresenceRegistry other = join("other", "");
+        draining.publish(Map.of("alice", 1));
+
+        draining.drain();
+
+        assertThat(other.liveNodes()).containsOnlyKeys(other.nodeId());
+        assertThat(draining.liveNodes()).doesNotContainKey(draining.nodeId());
+        assertThat(other.connectedElsewhere("alice")).isTrue();
+    }
+
+    @Test
+    void leavingWithdrawsTheNodeAndItsSessions() {
+        JdbcPresenceRegistry leaving = join("leaving", "");
+        JdbcPresenceRegistry other = join("other", "");
+        leaving.publish(Map.of("alice", 1));
+
+        leaving.leave();
+
+        assertThat(other.liveNodes()).containsOnlyKeys(other.nodeId());
+        assertThat(other.connectedElsewhere("alice")).isFalse();
+    }
+
+    private JdbcPresenceRegistry join(String nodeId, String advertisedUrl) {
+        JdbcPresenceRegistry registry = new JdbcPresenceRegistry(nodeId, advertisedUrl, TTL_MILLIS, tables,
+                transactionTemplate, new SimpleMeterRegistry());
+        registry.join();
+        return registry;
+    }
+
+    /**
+     * In-memory stand-in for the two presence tables, answering the registry's statements with a clock the test
+     * moves by hand in place of the database's.
+     */
+    private static class PresenceTables extends JdbcTemplate {
+
+        private final Map<String, Node> nodes = new HashMap<>();
+        private final Map<String, Map<String, Integer>> sessions = new HashMap<>();
+        long now = 1_000_000;
+
+        private static final class Node {
+            final String address;
+            boolean draining;
+            long heartbeatAt;
+
+            Node(String address, boolean draining, long heartbeatAt) {
+                this.address = address;
+                this.draining = draining;
+                this.heartbeatAt = heartbeatAt;
+            }
+        }
+
+        private boolean alive(Node node, Object ttlMicros) {
+            return node.heartbeatAt > now - (Long) ttlMicros / 1000;
+        }
+
+        private boolean dead(Node node, Object ttlMicros) {
+            return node.heartbeatAt < now - (Long) ttlMicros / 1000;
+        }
+
+        @Override
+        public int update(String sql, Object... args) {
+            String nodeId = (String) args[0];
+            Node node = nodes.get(nodeId);
+            if(sql.startsWith("INSERT INTO _presence_nodes")) {
+                nodes.put(nodeId, new Node((String) args[1], (Boolean) args[2], now));
+                return 1;
+            }
+            if(sql.startsWith("UPDATE _presence_nodes SET heartbeat_at")) {
+                if(node == null) return 0;
+                node.heartbeatAt = now;
+                return 1;
+            }
+            if(sql.startsWith("UPDATE _presence_nodes SET draining")) {
+                if(node == null) return 0;
+                node.draining = true;
+                return 1;
+            }
+            if(sql.startsWith("DELETE FROM _presence_nodes WHERE node_id = ? AND heartbeat_at")) {
+                if(node == null || !dead(node, args[1])) return 0;
+                nodes.remove(nodeId);
+                return 1;
+            }
+            if(sql.startsWith("DELETE FROM _presence_nodes")) {
+                return nodes.remove(nodeId) != null ? 1 : 0;
+            }
+            if(sql.startsWith("DELETE FROM _presence_sessions WHERE node_id = ? AND user_id")) {
+                Map<String, Integer> users = sessions.getOrDefault(nodeId, new HashMap<>());
+                return users.remove((String) args[1]) != null ? 1 : 0;
+            }
+            if(sql.startsWith("DELETE FROM _presence_sessions")) {
+                Map<String, Integer> users = sessions.remove(nodeId);
+                return users != null ? users.size() : 0;
+            }
+            if(sql.startsWith("INSERT INTO _presence_sessions")) {
+                sessions.computeIfAbsent(nodeId, id -> new HashMap<>()).put((String) args[1], (Integer) args[2]);
+                return 1;
+            }
+            throw new UnsupportedOperationException(sql);
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            return batchArgs.stream().mapToInt(args -> update(sql, args)).toArray();
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            if(!sql.startsWith("SELECT node_id, address")) throw new UnsupportedOperationException(sql);
+
+            for(Map.Entry<String, Node> entry : nodes.entrySet()) {
+                Node node = entry.getValue();
+                if(node.draining || !alive(node, args[0])) continue;
+                try {
+                    ResultSet row = mock(ResultSet.class);
+                    when(row.getString("node_id")).thenReturn(entry.getKey());
+                    when(row.getString("address")).thenReturn(node.address);
+                    rch.processRow(row);
+                } catch(SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            List<String> rows = new ArrayList<>();
+            if(sql.startsWith("SELECT DISTINCT s.user_id")) {
+                List<Object> userIds = Arrays.asList(args).subList(2, args.length);
+                sessions.forEach((nodeId, users) -> {
+                    Node node = nodes.get(nodeId);
+                    if(nodeId.equals(args[0]) || node == null || !alive(node, args[1])) return;
+                    users.keySet().stream().filter(userIds::contains).filter(u -> !rows.contains(u)).forEach(rows::add);
+                });
+            } else if(sql.startsWith("SELECT node_id FROM _presence_nodes")) {
+                nodes.forEach((nodeId, node) -> {
+                    if(dead(node, args[0])) rows.add(nodeId);
+                });
+            } else if(sql.startsWith("SELECT user_id FROM _presence_sessions")) {
+                rows.addAll(sessions.getOrDefault((String) args[0], Map.of()).keySet());
+            } else {
+                throw new UnsupportedOperationException(sql);
+            }
+            return (List<T>) rows;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.alfarays.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConsistentHashRingTest {
+
+    private static final int KEYS = 10_000;
+    private static final int VIRTUAL_NODES = 128;
+
+    @Test
+    void emptyRingOwnsNothing() {
+        assertThat(new ConsistentHashRing(List.of(), VIRTUAL_NODES).ownerOf("user-1")).isNull();
+    }
+
+    @Test
+    void rejectsNonPositiveVirtualNodes() {
+        assertThatThrownBy(() -> new ConsistentHashRing(List.of("node-a"), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void ownershipDoesNotDependOnMembershipOrder() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("node-a", "node-b", "node-c"), VIRTUAL_NODES);
+        ConsistentHashRing reordered = new ConsistentHashRing(List.of("node-c", "node-a", "node-b"), VIRTUAL_NODES);
+
+        assertThat(owners(reordered)).isEqualTo(owners(ring));
+    }
+
+    @Test
+    void keysAreSpreadAcrossAllNodes() {
+        Map<String, String> owners = owners(new ConsistentHashRing(List.of("node-a", "node-b", "node-c"), VIRTUAL_NODES));
+
+        Map<String, Integer> load = new HashMap<>();
+        owners.values().forEach(node -> load.merge(node, 1, Integer::sum));
+        assertThat(load).containsOnlyKeys("node-a", "node-b", "node-c");
+        // An even share is a third; virtual nodes keep each one well within half of that either way
+        assertThat(load.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 6, KEYS / 2));
+    }
+
+    @Test
+    void addingANodeOnlyMovesKeysToIt() {
+        Map<String, String> before = owners(new ConsistentHashRing(List.of("node-a", "node-b", "node-c"), VIRTUAL_NODES));
+        Map<String, String> after = owners(new ConsistentHashRing(List.of("node-a", "node-b", "node-c", "node-d"), VIRTUAL_NODES));
+
+        int moved = 0;
+        for(Map.Entry<String, String> entry : after.entrySet()) {
+            if(!entry.getValue().equals(before.get(entry.getKey()))) {
+                assertThat(entry.getValue()).isEqualTo("node-d");
+                moved++;
+            }
+        }
+        // About a quarter of the keys should move to the fourth node
+        assertThat(moved).isBetween(KEYS / 8, KEYS / 2);
+    }
+
+    @Test
+    void removingANodeOnlyMovesTheKeysItOwned() {
+        Map<String, String> before = owners(new ConsistentHashRing(List.of("node-a", "node-b", "node-c"), VIRTUAL_NODES));
+        Map<String, String> after = owners(new ConsistentHashRing(List.of("node-a", "node-c"), VIRTUAL_NODES));
+
+        for(Map.Entry<String, String> entry : before.entrySet()) {
+            String owner = after.get(entry.getKey());
+            if(entry.getValue().equals("node-b")) {
+                assertThat(owner).isIn("node-a", "node-c");
+            } else {
+                assertThat(owner).isEqualTo(entry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, String> owners(ConsistentHashRing ring) {
+        Map<String, String> owners = new HashMap<>();
+        for(int i = 0; i < KEYS; i++) {
+            owners.put("user-" + i, ring.ownerOf("user-" + i));
+        }
+        return owners;
+    }
+}
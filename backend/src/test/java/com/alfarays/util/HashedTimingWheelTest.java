@@ -0,0 +1,90 @@
+package com.alfarays.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HashedTimingWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    // Four buckets of 10 ms: one turn of the wheel covers 40 ms
+    private final HashedTimingWheel wheel = new HashedTimingWheel("test-timer", TICK_MILLIS, 4, Runnable::run);
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    void rejectsNonPositiveTickOrSize() {
+        assertThatThrownBy(() -> new HashedTimingWheel("bad", 0, 4, Runnable::run))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new HashedTimingWheel("bad", 10, 0, Runnable::run))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void firesNoEarlierThanItsDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAfter = new AtomicLong();
+        long scheduled = System.nanoTime();
+
+        wheel.schedule(() -> {
+            firedAfter.set(System.nanoTime() - scheduled);
+            fired.countDown();
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(firedAfter.get()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    void timeoutBeyondOneTurnWaitsOutItsRemainingRounds() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAfter = new AtomicLong();
+        long scheduled = System.nanoTime();
+
+        // 130 ms is more than three turns; its bucket comes round three times before it is due
+        HashedTimingWheel.Timeout timeout = wheel.schedule(() -> {
+            firedAfter.set(System.nanoTime() - scheduled);
+            fired.countDown();
+        }, 130, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(60);
+        assertThat(timeout.isExpired()).isFalse();
+
+        assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(firedAfter.get()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(130));
+        assertThat(timeout.isExpired()).isTrue();
+    }
+
+    @Test
+    void cancelledTimeoutNeverRuns() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean();
+        HashedTimingWheel.Timeout timeout = wheel.schedule(() -> ran.set(true), 20, TimeUnit.MILLISECONDS);
+
+        assertThat(timeout.cancel()).isTrue();
+        assertThat(timeout.cancel()).isTrue();
+
+        Thread.sleep(100);
+        assertThat(ran).isFalse();
+        assertThat(timeout.isExpired()).isFalse();
+    }
+
+    @Test
+    void cancellingAfterExpiryReportsThatTheTaskRan() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        HashedTimingWheel.Timeout timeout = wheel.schedule(fired::countDown, 0, TimeUnit.MILLISECONDS);
+
+        assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(timeout.cancel()).isFalse();
+    }
+}
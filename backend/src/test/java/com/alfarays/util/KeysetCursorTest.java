@@ -0,0 +1,51 @@
+package com.alfarays.util;
+
+import com.alfarays.exceptions.AuthorizationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeysetCursorTest {
+
+    @Test
+    void roundTripsTimestampAndId() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2025, 3, 14, 9, 26, 53, 589_000_000), "0195a1b2-c3d4-7e5f-8a9b-0c1d2e3f4a5b");
+
+        assertThat(KeysetCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsAnIdContainingTheSeparator() {
+        KeysetCursor cursor = new KeysetCursor(LocalDateTime.of(2025, 1, 1, 0, 0), "a|b");
+
+        assertThat(KeysetCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void encodesToAUrlSafeToken() {
+        String encoded = new KeysetCursor(LocalDateTime.of(2025, 1, 1, 0, 0, 0, 1), "id?&=").encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"not base64!", "", "bm8tc2VwYXJhdG9y"})
+    void rejectsMalformedCursors(String cursor) {
+        assertThatThrownBy(() -> KeysetCursor.decode(cursor)).isInstanceOf(AuthorizationException.class);
+    }
+
+    @Test
+    void rejectsACursorWithAnUnparseableTimestamp() {
+        String cursor = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("yesterday|message-1".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> KeysetCursor.decode(cursor)).isInstanceOf(AuthorizationException.class);
+    }
+}
@@ -0,0 +1,104 @@
+package com.alfarays.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RingBufferTest {
+
+    private final AtomicLong gating = new AtomicLong(-1);
+
+    @Test
+    void rejectsCapacityThatIsNotAPowerOfTwo() {
+        assertThatThrownBy(() -> new RingBuffer<>(6, Object::new, new WaitStrategy.BusySpin()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void claimsInOrderUntilFullThenWrapsOntoReleasedSlots() {
+        RingBuffer<Object> ring = ring(4);
+
+        for(long expected = 0; expected < 4; expected++) {
+            assertThat(ring.tryNext()).isEqualTo(expected);
+            ring.publish(expected);
+        }
+        assertThat(ring.tryNext()).isEqualTo(-1);
+        assertThat(ring.backlog()).isEqualTo(4);
+
+        // The last stage moving past 0 and 1 frees exactly those two slots
+        gating.set(1);
+        assertThat(ring.tryNext()).isEqualTo(4);
+        assertThat(ring.tryNext()).isEqualTo(5);
+        assertThat(ring.tryNext()).isEqualTo(-1);
+        assertThat(ring.get(4)).isSameAs(ring.get(0));
+        assertThat(ring.get(5)).isSameAs(ring.get(1));
+    }
+
+    @Test
+    void wrappedSlotIsNotSeenAsPublishedUntilItsOwnRoundIsPublished() {
+        RingBuffer<Object> ring = ring(2);
+        for(long sequence = 0; sequence < 2; sequence++) {
+            ring.publish(ring.tryNext());
+        }
+        gating.set(1);
+
+        long wrapped = ring.tryNext();
+        assertThat(wrapped).isEqualTo(2);
+        // Slot 0 still carries the previous round's marker
+        assertThat(ring.highestPublished(wrapped, wrapped)).isEqualTo(wrapped - 1);
+
+        ring.publish(wrapped);
+        assertThat(ring.highestPublished(wrapped, wrapped)).isEqualTo(wrapped);
+    }
+
+    @Test
+    void highestPublishedStopsAtTheFirstGap() {
+        RingBuffer<Object> ring = ring(8);
+        long first = ring.tryNext();
+        long second = ring.tryNext();
+        long third = ring.tryNext();
+        ring.publish(first);
+        ring.publish(third);
+
+        assertThat(ring.highestPublished(first, third)).isEqualTo(first);
+
+        ring.publish(second);
+        assertThat(ring.highestPublished(first, third)).isEqualTo(third);
+    }
+
+    @Test
+    void nextWaitsForTheLastStageToFreeASlot() {
+        RingBuffer<Object> ring = ring(2);
+        ring.publish(ring.tryNext());
+        ring.publish(ring.tryNext());
+
+        CompletableFuture<Long> claim = CompletableFuture.supplyAsync(() -> ring.next(5, TimeUnit.SECONDS));
+        assertThat(claim).isNotDone();
+
+        gating.set(0);
+        assertThat(claim.join()).isEqualTo(2);
+    }
+
+    @Test
+    void nextGivesUpWhenTheRingStaysFull() {
+        RingBuffer<Object> ring = ring(2);
+        ring.publish(ring.tryNext());
+        ring.publish(ring.tryNext());
+
+        long started = System.nanoTime();
+        assertThat(ring.next(20, TimeUnit.MILLISECONDS)).isEqualTo(-1);
+        assertThat(System.nanoTime() - started).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+        assertThat(ring.cursor().get()).isEqualTo(1);
+    }
+
+    private RingBuffer<Object> ring(int capacity) {
+        RingBuffer<Object> ring = new RingBuffer<>(capacity, Object::new, new WaitStrategy.BusySpin());
+        ring.setGatingSequence(gating);
+        return ring;
+    }
+}
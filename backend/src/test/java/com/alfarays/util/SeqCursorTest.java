@@ -0,0 +1,37 @@
+package com.alfarays.util;
+
+import com.alfarays.exceptions.AuthorizationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SeqCursorTest {
+
+    @Test
+    void roundTripsTheSequenceNumber() {
+        SeqCursor cursor = new SeqCursor(9_007_199_254_740_993L);
+
+        assertThat(SeqCursor.decode(cursor.encode())).isEqualTo(cursor);
+        assertThat(cursor.encode()).matches("[A-Za-z0-9_-]+");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"not base64!", "", "bm90LWEtbnVtYmVy"})
+    void rejectsMalformedCursors(String cursor) {
+        assertThatThrownBy(() -> SeqCursor.decode(cursor)).isInstanceOf(AuthorizationException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-5"})
+    void rejectsSequenceNumbersThatCannotPrecedeAMessage(String seq) {
+        String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(seq.getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> SeqCursor.decode(cursor)).isInstanceOf(AuthorizationException.class);
+    }
+}
@@ -0,0 +1,75 @@
+package com.alfarays.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WaitStrategyTest {
+
+    @Test
+    void resolvesStrategiesByName() {
+        assertThat(WaitStrategy.named("Blocking")).isInstanceOf(WaitStrategy.Blocking.class);
+        assertThat(WaitStrategy.named("sleeping")).isInstanceOf(WaitStrategy.Sleeping.class);
+        assertThat(WaitStrategy.named("yielding")).isInstanceOf(WaitStrategy.Yielding.class);
+        assertThat(WaitStrategy.named("busy-spin")).isInstanceOf(WaitStrategy.BusySpin.class);
+        assertThatThrownBy(() -> WaitStrategy.named("polling")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "sleeping", "yielding", "busy-spin"})
+    void returnsImmediatelyWhenTheSequenceIsAlreadyAvailable(String name) {
+        AtomicLong dependent = new AtomicLong(7);
+
+        assertThat(WaitStrategy.named(name).waitFor(5, dependent, () -> true)).isEqualTo(7);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "sleeping", "yielding", "busy-spin"})
+    void wakesUpOnceTheDependentSequenceAdvances(String name) {
+        WaitStrategy strategy = WaitStrategy.named(name);
+        AtomicLong dependent = new AtomicLong(-1);
+
+        CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() -> strategy.waitFor(3, dependent, () -> true));
+        assertThat(waiter).isNotDone();
+
+        dependent.set(4);
+        strategy.signalAllWhenBlocking();
+        assertThat(waiter.orTimeout(5, TimeUnit.SECONDS).join()).isEqualTo(4);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "sleeping", "yielding", "busy-spin"})
+    void returnsWhatWasSeenWhenStopped(String name) {
+        WaitStrategy strategy = WaitStrategy.named(name);
+        AtomicLong dependent = new AtomicLong(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() -> strategy.waitFor(3, dependent, running::get));
+        running.set(false);
+        strategy.signalAllWhenBlocking();
+
+        assertThat(waiter.orTimeout(5, TimeUnit.SECONDS).join()).isEqualTo(1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "sleeping", "yielding", "busy-spin"})
+    void waitsUntilAnArbitraryConditionHolds(String name) {
+        WaitStrategy strategy = WaitStrategy.named(name);
+        AtomicBoolean ready = new AtomicBoolean();
+
+        CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> strategy.waitUntil(ready::get, () -> true));
+        assertThat(waiter).isNotDone();
+
+        ready.set(true);
+        strategy.signalAllWhenBlocking();
+        waiter.orTimeout(5, TimeUnit.SECONDS).join();
+    }
+}
@@ -114,6 +114,10 @@ export class ChatComponent implements OnInit, OnDestroy, AfterViewChecked {
       this.chatsService.updatePartnerStatus(notification);
     });
 
+    this.websocketService.userStatusSnapshot$.pipe(takeUntil(this.destroy$)).subscribe(snapshot => {
+      this.chatsService.applyPresenceSnapshot(snapshot);
+    });
+
     this.websocketService.messageSentAck$.pipe(takeUntil(this.destroy$)).subscribe(msg => {
       this.chatsService.updateLocalConversationState(msg);
     });
@@ -122,6 +126,14 @@ export class ChatComponent implements OnInit, OnDestroy, AfterViewChecked {
       this.chatsService.updateLocalConversationState(msg);
     });
 
+    this.websocketService.chatErrors$.pipe(takeUntil(this.destroy$)).subscribe(error => {
+      this._notificationService.publish({
+        message: error.message,
+        timestamp: error.timestamp,
+        type: MessageType.Error
+      });
+    });
+
     this.searchSubject.pipe(debounceTime(300), distinctUntilChanged(), takeUntil(this.destroy$))
       .subscribe(q => this.chatsService.searchConversation(q));
   }
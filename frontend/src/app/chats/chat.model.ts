@@ -16,6 +16,8 @@ export interface ConversationResponse {
 export interface MessageResponse {
   id: number
   conversationId: number
+  seq?: number
+  clientMessageId?: string
   sender: UserResponse
   senderId: string
   content: string
@@ -25,8 +27,35 @@ export interface MessageResponse {
   createdAt: string
 }
 
+export interface ConversationSync {
+  conversationId: string;
+  messages: MessageResponse[];
+  lastSeq: number;
+  hasMore: boolean;
+  readUpToSeq?: number;
+  partnerReadUpToSeq?: number;
+  partnerReadAt?: string;
+  unreadCount?: number;
+}
+
 export interface MessageRequest {
   conversationId: string;
   message: string;
+  clientMessageId?: string;
+}
+
+
+export interface ChatError {
+  conversationId?: string;
+  clientMessageId?: string;
+  message: string;
+  timestamp: string;
 }
 
+export interface AffinityHint {
+  reason: 'OWNER' | 'REBALANCE' | 'DRAIN';
+  node: string;
+  url: string;
+  local: boolean;
+  delayMs?: number;
+}
@@ -5,7 +5,7 @@ import {HttpClient} from '@angular/common/http';
 import {map, tap} from 'rxjs/operators';
 import {GlobalResponse} from '../core/core.model';
 import {WebSocketService} from '../shared/services/websocket.service';
-import {StatusNotification} from '../shared/models/user.model';
+import {PresenceSnapshot, StatusNotification} from '../shared/models/user.model';
 
 @Injectable({providedIn: "root"})
 export class ChatsService {
@@ -66,6 +66,12 @@ export class ChatsService {
     this.partnerStatusMap.next(new Map(currentMap));
   }
 
+  public applyPresenceSnapshot(snapshot: PresenceSnapshot): void {
+    const currentMap = new Map(this.partnerStatusMap.value);
+    snapshot.partners.forEach(partner => currentMap.set(partner.userId, partner.status));
+    this.partnerStatusMap.next(currentMap);
+  }
+
   public updateLocalConversationState(message: MessageResponse): void {
     const conversations = this.rawConversationsSubject.getValue();
     const updated = conversations.map(conv => {
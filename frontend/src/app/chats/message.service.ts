@@ -2,7 +2,7 @@ import {inject, Injectable, OnDestroy} from '@angular/core';
 import {HttpClient} from '@angular/common/http';
 import {BehaviorSubject, Observable, of, Subject} from 'rxjs';
 import {catchError, map, tap, takeUntil} from 'rxjs/operators';
-import {MessageResponse} from './chat.model';
+import {ConversationSync, MessageResponse} from './chat.model';
 import {GlobalResponse} from '../core/core.model';
 import {WebSocketService} from '../shared/services/websocket.service';
 import {ChatsService} from './chats.service';
@@ -32,6 +32,15 @@ export class MessageService implements OnDestroy {
         this.markMessagesAsSeenLocally();
       }
     });
+
+    // After a reconnect, ask only for what the open conversation missed
+    this.wsService.reconnected$.pipe(takeUntil(this.destroy$)).subscribe(() => {
+      if (this.activeConversationId) {
+        this.wsService.requestSync(this.activeConversationId, this.lastSeq());
+      }
+    });
+
+    this.wsService.conversationSync$.pipe(takeUntil(this.destroy$)).subscribe(sync => this.applySync(sync));
   }
 
   public setActiveConversation(id: number | null) {
@@ -43,6 +52,9 @@ export class MessageService implements OnDestroy {
     const currentMessages = this.messagesSubject.getValue();
 
     if (this.activeConversationId === message.conversationId) {
+      // A message already received through a sync is not added twice
+      if (currentMessages.some(m => m.id === message.id)) return;
+
       // 1. Add message to the current window
       this.messagesSubject.next([...currentMessages, message]);
 
@@ -66,6 +78,35 @@ export class MessageService implements OnDestroy {
       );
   }
 
+  private applySync(sync: ConversationSync): void {
+    if (this.activeConversationId?.toString() !== sync.conversationId.toString()) return;
+
+    const current = this.messagesSubject.getValue();
+    const known = new Set(current.map(m => m.id));
+    const missed = sync.messages.filter(m => !known.has(m.id));
+    const partnerReadUpTo = sync.partnerReadUpToSeq ?? 0;
+
+    // The partner's watermark only matters for our own messages, and theirs are already seen by us
+    const merged = [...current, ...missed]
+      .map(m => ({...m, isSeen: m.isSeen || (m.seq ?? 0) <= partnerReadUpTo}))
+      .sort((a, b) => (a.seq ?? 0) - (b.seq ?? 0));
+    this.messagesSubject.next(merged);
+
+    if (missed.length) {
+      const newest = missed[missed.length - 1];
+      this.chatsService.updateLastMessage(newest.conversationId, newest.content);
+      this.wsService.sendReadReceipt(sync.conversationId);
+      this.wsService.resetUnreadCount(sync.conversationId);
+    }
+    if (sync.hasMore) {
+      this.wsService.requestSync(sync.conversationId, sync.lastSeq);
+    }
+  }
+
+  private lastSeq(): number {
+    return this.messagesSubject.getValue().reduce((max, m) => Math.max(max, m.seq ?? 0), 0);
+  }
+
   public markMessagesAsSeenLocally(): void {
     const updated = this.messagesSubject.getValue().map(m => ({...m, isSeen: true}));
     this.messagesSubject.next(updated);
@@ -26,3 +26,9 @@ export interface StatusNotification {
   status: 'ONLINE' | 'OFFLINE';
   timestamp: string;
 }
+
+export interface PresenceSnapshot {
+  type: 'SNAPSHOT';
+  partners: { userId: string; status: 'ONLINE' | 'OFFLINE'; lastSeen: string }[];
+  timestamp: string;
+}
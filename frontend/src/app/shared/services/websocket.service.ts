@@ -1,16 +1,25 @@
-import {Injectable, OnDestroy} from "@angular/core";
-import {BehaviorSubject, Subject} from "rxjs";
+import {inject, Injectable, OnDestroy} from "@angular/core";
+import {HttpClient, HttpParams} from "@angular/common/http";
+import {BehaviorSubject, of, Subject} from "rxjs";
+import {catchError} from "rxjs/operators";
 import {Client} from "@stomp/stompjs";
 import SockJS from "sockjs-client";
 import {API} from "../../constants";
-import {ConversationResponse, MessageResponse} from "../../chats/chat.model";
-import {StatusNotification} from '../models/user.model';
+import {AffinityHint, ChatError, ConversationResponse, ConversationSync, MessageResponse} from "../../chats/chat.model";
+import {GlobalResponse} from "../../core/core.model";
+import {PresenceSnapshot, StatusNotification} from '../models/user.model';
 
 @Injectable({providedIn: "root"})
 export class WebSocketService implements OnDestroy {
-  public activeConversationId: number | null = null;
+  private static readonly ROUTE_KEY = "chat.route";
+
+  private http = inject(HttpClient);
   private client?: Client;
 
+  private _activeConversationId: number | null = null;
+  private socketUrl: string = API.WEBSOCKET_URL;
+  private reconnectTimer?: ReturnType<typeof setTimeout>;
+
   private connectionStatusSubject = new BehaviorSubject<"connecting" | "connected" | "disconnected">("disconnected");
   connectionStatus$ = this.connectionStatusSubject.asObservable();
 
@@ -23,21 +32,69 @@ export class WebSocketService implements OnDestroy {
   private messageReadSubject = new Subject<{ conversationId: string, readerId: string }>();
   messageRead$ = this.messageReadSubject.asObservable();
 
+  private messageDeliveredSubject = new Subject<{ conversationId: string, recipientId: string, messageIds: string[] }>();
+  messageDelivered$ = this.messageDeliveredSubject.asObservable();
+
   private unreadCountsSubject = new BehaviorSubject<Record<string, number>>({});
   unreadCounts$ = this.unreadCountsSubject.asObservable();
 
   private statusSubject = new Subject<StatusNotification>();
   public userStatus$ = this.statusSubject.asObservable();
 
+  private statusSnapshotSubject = new Subject<PresenceSnapshot>();
+  public userStatusSnapshot$ = this.statusSnapshotSubject.asObservable();
+
+  private conversationSyncSubject = new Subject<ConversationSync>();
+  public conversationSync$ = this.conversationSyncSubject.asObservable();
+
+  private chatErrorSubject = new Subject<ChatError>();
+  public chatErrors$ = this.chatErrorSubject.asObservable();
+
+  private reconnectedSubject = new Subject<void>();
+  public reconnected$ = this.reconnectedSubject.asObservable();
+
+  private hasConnected = false;
+
   constructor() {
   }
 
+  public get activeConversationId(): number | null {
+    return this._activeConversationId;
+  }
+
+  // The last opened conversation decides which node this client connects to, so both sides of a chat meet on one
+  public set activeConversationId(id: number | null) {
+    this._activeConversationId = id;
+    if (id) localStorage.setItem(WebSocketService.ROUTE_KEY, id.toString());
+  }
+
   connect(token: string) {
-    if (this.client?.active) return;
+    if (this.client?.active || this.connectionStatusSubject.getValue() === "connecting") return;
     this.connectionStatusSubject.next("connecting");
 
+    // Ask which node owns this client first; the shared endpoint still works when there is no answer
+    this.http.get<GlobalResponse<AffinityHint>>("/affinity", {params: this.routeParams()})
+      .pipe(catchError(() => of(null)))
+      .subscribe(res => {
+        this.socketUrl = res?.data?.url || API.WEBSOCKET_URL;
+        this.activate(token);
+      });
+  }
+
+  private routeParams(): HttpParams {
+    const route = this._activeConversationId?.toString() ?? localStorage.getItem(WebSocketService.ROUTE_KEY);
+    return route ? new HttpParams().set("conversationId", route) : new HttpParams();
+  }
+
+  private endpoint(): string {
+    const params = this.routeParams().toString();
+    return params ? `${this.socketUrl}?${params}` : this.socketUrl;
+  }
+
+  private activate(token: string) {
     this.client = new Client({
-      webSocketFactory: () => new SockJS(API.WEBSOCKET_URL),
+      // Evaluated on every (re)connect, so a changed owner is picked up by the next attempt
+      webSocketFactory: () => new SockJS(this.endpoint()),
       connectHeaders: {Authorization: `Bearer ${token}`},
       reconnectDelay: 5000,
       heartbeatIncoming: 4000,
@@ -50,7 +107,12 @@ export class WebSocketService implements OnDestroy {
       /*Participant status*/
       this.client!.subscribe('/user/queue/status', message => {
         const payload = JSON.parse(message.body);
-        this.statusSubject.next(payload);
+        // One snapshot with every partner arrives first, single-partner deltas follow
+        if (payload.type === 'SNAPSHOT') {
+          this.statusSnapshotSubject.next(payload);
+        } else {
+          this.statusSubject.next(payload);
+        }
       });
 
       this.client!.publish({destination: "/app/get-partner-status", body: null});
@@ -58,6 +120,7 @@ export class WebSocketService implements OnDestroy {
       // 1. Listen for messages from others
       this.client!.subscribe("/user/queue/private-messages", msg => {
         const message: MessageResponse = JSON.parse(msg.body);
+        this.sendDeliveredAck(message);
         this.privateMessageSubject.next(message);
         if (this.activeConversationId !== message.conversationId) {
           this.incrementCount(message.conversationId);
@@ -81,11 +144,45 @@ export class WebSocketService implements OnDestroy {
       this.client!.subscribe("/user/queue/messages-read", msg => {
         this.messageReadSubject.next(JSON.parse(msg.body));
       });
+
+      /*delivered receipts for messages this user sent, batched by the server*/
+      this.client!.subscribe("/user/queue/messages-delivered", msg => {
+        this.messageDeliveredSubject.next(JSON.parse(msg.body));
+      });
+
+      /*only what was missed while disconnected, requested per conversation by sequence number*/
+      this.client!.subscribe("/user/queue/sync", msg => {
+        this.conversationSyncSubject.next(JSON.parse(msg.body));
+      });
+
+      /*inbound frames the server rejected or failed to process, e.g. a send while the server is saturated*/
+      this.client!.subscribe("/user/queue/errors", msg => {
+        this.chatErrorSubject.next(JSON.parse(msg.body));
+      });
+
+      /*the owning node changed or this node is draining; move after the server-chosen, jittered delay*/
+      this.client!.subscribe("/user/queue/reconnect", msg => {
+        this.scheduleReconnect(JSON.parse(msg.body));
+      });
+
+      if (this.hasConnected) {
+        this.reconnectedSubject.next();
+      }
+      this.hasConnected = true;
     };
 
     this.client.activate();
   }
 
+  private scheduleReconnect(hint: AffinityHint) {
+    clearTimeout(this.reconnectTimer);
+    this.reconnectTimer = setTimeout(() => {
+      this.socketUrl = hint.url || API.WEBSOCKET_URL;
+      // The client reconnects on its own through webSocketFactory, and the reconnect triggers a sync
+      this.client?.forceDisconnect();
+    }, hint.delayMs ?? 0);
+  }
+
   public setInitialUnreadCounts(conversations: ConversationResponse[]): void {
     const counts: Record<string, number> = {};
     conversations.forEach(conv => {
@@ -110,9 +207,20 @@ export class WebSocketService implements OnDestroy {
     this.unreadCountsSubject.next({...current, [id.toString()]: count});
   }
 
-  sendMessage(payload: { conversationId: number; content: string }) {
+  sendMessage(payload: { conversationId: number; content: string; clientMessageId?: string }) {
     if (this.client?.connected) {
-      this.client.publish({destination: "/app/chat.sendMessage", body: JSON.stringify(payload)});
+      // The server drops a resent frame with the same id and answers with the original message
+      const body = {...payload, clientMessageId: payload.clientMessageId ?? crypto.randomUUID()};
+      this.client.publish({destination: "/app/chat.sendMessage", body: JSON.stringify(body)});
+    }
+  }
+
+  requestSync(conversationId: number | string, sinceSeq: number) {
+    if (this.client?.connected) {
+      this.client.publish({
+        destination: "/app/chat.sync",
+        body: JSON.stringify({conversationId: conversationId.toString(), sinceSeq})
+      });
     }
   }
 
@@ -125,7 +233,17 @@ export class WebSocketService implements OnDestroy {
     }
   }
 
-  disconnect(): void {
+  private sendDeliveredAck(message: MessageResponse) {
+    if (this.client?.connected) {
+      this.client.publish({
+        destination: "/app/chat.delivered",
+        body: JSON.stringify({conversationId: message.conversationId.toString(), messageIds: [message.id.toString()]})
+      });
+    }
+  }
+
+    disconnect(): void {
+    clearTimeout(this.reconnectTimer);
     if (this.client) {
       this.client.deactivate();
       this.client = undefined;